@@ -0,0 +1,24 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+final class Benchmarks {
+    private Benchmarks() {}
+
+    // The daemon runs on the same JVM as the benchmark, so running these with a Java 17 or 21 launcher picks which
+    // runner, and so which default scheduler, is measured
+    static ForkedTaskExecutorSpec.Builder spec() {
+        var javaExecutable = ProcessHandle.current()
+            .info()
+            .command()
+            .orElseThrow(() -> new IllegalStateException("JVM executable not found"));
+        var classpath = System.getProperty("forkedtaskexecutor.jmh.daemonclasspath");
+        if (classpath == null) {
+            throw new IllegalStateException("No daemon classpath provided; run benchmarks through the jmh17 or jmh21 tasks");
+        }
+        return ForkedTaskExecutorSpec.builder()
+            .taskClass(EchoBenchmarkTask.class.getName())
+            .javaExecutable(javaExecutable)
+            .addJvmOption("-Xmx2g")
+            .addJvmOption("-classpath")
+            .addJvmOption(classpath);
+    }
+}
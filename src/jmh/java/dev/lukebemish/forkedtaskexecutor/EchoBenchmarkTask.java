@@ -0,0 +1,13 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import dev.lukebemish.forkedtaskexecutor.runner.Task;
+
+// Returns its input straight away, so that benchmarks measure only the executor
+public class EchoBenchmarkTask implements Task {
+    public EchoBenchmarkTask(String[] args) {}
+
+    @Override
+    public byte[] run(byte[] input) {
+        return input;
+    }
+}
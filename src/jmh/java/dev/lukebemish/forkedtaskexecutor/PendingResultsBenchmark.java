@@ -0,0 +1,63 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Compares the pending result table against the map it replaced: each operation registers a submission and then
+// removes the one submitted a window earlier, as the listener does when results come back in order.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PendingResultsBenchmark {
+    @Param({"16", "512"})
+    public int inFlight;
+
+    private PendingResults pending;
+    private Map<Integer, CompletableFuture<byte[]>> map;
+    private final AtomicInteger pendingIds = new AtomicInteger();
+    private final AtomicInteger mapIds = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        pending = new PendingResults(1024);
+        map = new ConcurrentHashMap<>();
+        pendingIds.set(0);
+        mapIds.set(0);
+        for (int i = 0; i < inFlight; i++) {
+            pending.add(pendingIds.getAndIncrement());
+            map.put(mapIds.getAndIncrement(), new CompletableFuture<>());
+        }
+    }
+
+    @Benchmark
+    public Object pendingResults() {
+        int id = pendingIds.getAndIncrement() & Integer.MAX_VALUE;
+        pending.add(id);
+        return pending.remove((id - inFlight) & Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Object concurrentHashMap() {
+        int id = mapIds.getAndIncrement() & Integer.MAX_VALUE;
+        map.computeIfAbsent(id, i -> new CompletableFuture<>());
+        return map.remove((id - inFlight) & Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,46 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Latency of a single tiny submission to a running daemon, with nothing else in flight
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    @Param({"UNIX_DOMAIN", "TCP"})
+    public ForkedTaskExecutorSpec.Transport transport;
+
+    private final byte[] input = new byte[1];
+    private ForkedTaskExecutor executor;
+
+    @Setup
+    public void setup() {
+        executor = new ForkedTaskExecutor(Benchmarks.spec().transport(transport).build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Benchmark
+    public byte[] roundTrip() {
+        return executor.submit(input);
+    }
+}
@@ -0,0 +1,33 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Time from starting a daemon to its first answer, which is what a caller waits for before any work is done
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"UNIX_DOMAIN", "TCP"})
+    public ForkedTaskExecutorSpec.Transport transport;
+
+    @Benchmark
+    public byte[] startAndSubmit() {
+        try (var executor = new ForkedTaskExecutor(Benchmarks.spec().transport(transport).build())) {
+            return executor.submit(new byte[1]);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Submissions completed per second while keeping a number of them in flight. Large payloads are capped at 256 MiB in
+// flight, so that every combination fits in the heap.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ThroughputBenchmark {
+    private static final int BATCH = 64;
+    private static final long MAX_BYTES_IN_FLIGHT = 256L * 1024 * 1024;
+
+    @Param({"1", "1024", "1048576", "104857600"})
+    public int payloadSize;
+
+    @Param({"1", "8", "64"})
+    public int concurrency;
+
+    @Param({"-1", "65536"})
+    public int sharedMemoryThreshold;
+
+    private byte[] input;
+    private ForkedTaskExecutor executor;
+    private final Queue<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private int window;
+
+    @Setup
+    public void setup() {
+        input = new byte[payloadSize];
+        window = (int) Math.max(1, Math.min(concurrency, MAX_BYTES_IN_FLIGHT / payloadSize));
+        executor = new ForkedTaskExecutor(Benchmarks.spec().sharedMemoryThreshold(sharedMemoryThreshold).build());
+    }
+
+    @TearDown
+    public void tearDown() throws ExecutionException, InterruptedException {
+        Future<byte[]> future;
+        while ((future = inFlight.poll()) != null) {
+            future.get();
+        }
+        executor.close();
+    }
+
+    // Each invocation completes a batch of submissions, topping the window back up as each one finishes
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int submissions() throws ExecutionException, InterruptedException {
+        int bytes = 0;
+        for (int i = 0; i < BATCH; i++) {
+            while (inFlight.size() < window) {
+                inFlight.add(executor.submitAsync(input));
+            }
+            bytes += inFlight.remove().get().length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,204 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// Keeps a dynamic AppCDS archive for each combination of Java executable, JVM options and task classes, so that later
+// daemons map the classes an earlier one loaded instead of loading them again. The first daemon for a key records the
+// archive as it exits. The key covers the size and modification time of each classpath entry, so changing any of
+// them leaves the old archive unused rather than letting a stale one be loaded; once an archive for the new classpath
+// is published, those for earlier ones with otherwise the same key are deleted.
+final class ClassDataSharing {
+    // A lock older than this was left by a parent that never finished recording
+    private static final Duration STALE_LOCK = Duration.ofMinutes(10);
+
+    private final Path archive;
+    private final @Nullable Path recording;
+    private final @Nullable Path lock;
+    // Archive names start with this, which covers everything in the key but the classpath stamps
+    private final String family;
+
+    private ClassDataSharing(Path archive, @Nullable Path recording, @Nullable Path lock, String family) {
+        this.archive = archive;
+        this.recording = recording;
+        this.lock = lock;
+        this.family = family;
+    }
+
+    // Returns null if the classpath cannot be archived, as a JVM asked to archive it would fail to start
+    static @Nullable ClassDataSharing prepare(Path directory, ForkedTaskExecutorSpec spec) throws IOException {
+        if (!archivable(spec.jvmOptions())) {
+            return null;
+        }
+        Files.createDirectories(directory);
+        String family = family(spec);
+        String key = family + "-" + hash(classpathStamps(spec.jvmOptions()), 8);
+        var archive = directory.resolve(key + ".jsa");
+        if (Files.isRegularFile(archive)) {
+            return new ClassDataSharing(archive, null, null, family);
+        }
+        var lock = directory.resolve(key + ".lock");
+        if (tryLock(lock)) {
+            return new ClassDataSharing(archive, directory.resolve(key + ".jsa.recording"), lock, family);
+        }
+        // Another daemon is recording this archive; start without one rather than wait
+        return new ClassDataSharing(archive, null, null, family);
+    }
+
+    private static boolean tryLock(Path lock) throws IOException {
+        try {
+            Files.createFile(lock);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            try {
+                var modified = Files.getLastModifiedTime(lock).toInstant();
+                if (modified.isBefore(Instant.now().minus(STALE_LOCK))) {
+                    Files.deleteIfExists(lock);
+                    Files.createFile(lock);
+                    return true;
+                }
+            } catch (IOException ignored) {
+                // Someone else took or released the lock in the meantime
+            }
+            return false;
+        }
+    }
+
+    private static String family(ForkedTaskExecutorSpec spec) {
+        List<String> parts = new ArrayList<>();
+        parts.add(spec.javaExecutable());
+        parts.addAll(spec.jvmOptions());
+        parts.add(spec.taskClass());
+        parts.addAll(spec.additionalTaskClasses());
+        return hash(parts, 16);
+    }
+
+    private static String hash(List<String> parts, int bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (var part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, bytes);
+    }
+
+    // The size and modification time of each jar on the classpath given in the JVM options
+    static List<String> classpathStamps(List<String> jvmOptions) throws IOException {
+        List<String> stamps = new ArrayList<>();
+        for (var entry : classpath(jvmOptions)) {
+            var path = Path.of(entry);
+            if (Files.isRegularFile(path)) {
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                stamps.add(attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+            }
+        }
+        return stamps;
+    }
+
+    // The JVM refuses to use or record an archive if any classpath entry is a directory with anything in it
+    private static boolean archivable(List<String> jvmOptions) throws IOException {
+        for (var entry : classpath(jvmOptions)) {
+            var path = Path.of(entry);
+            if (Files.isDirectory(path)) {
+                try (var contents = Files.list(path)) {
+                    if (contents.findAny().isPresent()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static List<String> classpath(List<String> jvmOptions) {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < jvmOptions.size(); i++) {
+            var option = jvmOptions.get(i);
+            String classpath = null;
+            if ((option.equals("-cp") || option.equals("-classpath") || option.equals("--class-path")) && i + 1 < jvmOptions.size()) {
+                classpath = jvmOptions.get(++i);
+            } else if (option.startsWith("--class-path=")) {
+                classpath = option.substring("--class-path=".length());
+            }
+            if (classpath != null) {
+                entries.addAll(List.of(classpath.split(File.pathSeparator)));
+            }
+        }
+        return entries;
+    }
+
+    boolean isRecording() {
+        return recording != null;
+    }
+
+    List<String> jvmOptions() {
+        if (recording != null) {
+            return List.of("-XX:ArchiveClassesAtExit=" + recording);
+        }
+        if (Files.isRegularFile(archive)) {
+            return List.of("-XX:SharedArchiveFile=" + archive);
+        }
+        return List.of();
+    }
+
+    // Called if the daemon failed to start, so that a later daemon may record the archive instead
+    void abandon() throws IOException {
+        if (lock != null) {
+            Files.deleteIfExists(lock);
+        }
+    }
+
+    // Called once the daemon has exited; the archive is only published if the daemon finished writing it
+    void finish() throws IOException {
+        if (recording == null || lock == null) {
+            return;
+        }
+        try {
+            if (Files.isRegularFile(recording) && Files.size(recording) > 0) {
+                Files.move(recording, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                deleteSuperseded();
+            }
+        } finally {
+            Files.deleteIfExists(recording);
+            Files.deleteIfExists(lock);
+        }
+    }
+
+    // Archives recorded for earlier classpaths of the same spec would never be loaded again
+    private void deleteSuperseded() throws IOException {
+        List<Path> superseded;
+        try (var files = Files.list(archive.getParent())) {
+            superseded = files.filter(path -> {
+                var name = path.getFileName().toString();
+                return name.startsWith(family + "-") && name.endsWith(".jsa") && !path.equals(archive);
+            }).toList();
+        }
+        for (var path : superseded) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // A daemon still running may hold the archive open where that prevents deletion; a later publish retries
+            }
+        }
+    }
+}
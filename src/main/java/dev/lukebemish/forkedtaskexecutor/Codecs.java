@@ -0,0 +1,361 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// The built-in codecs; the daemon has a copy of this class
+final class Codecs {
+    private Codecs() {}
+
+    static final Codec<byte[]> BYTES = new Codec<>() {
+        @Override
+        public int sizeHint(byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        public void encode(byte[] value, ByteBuffer output) {
+            output.put(value);
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer input) {
+            byte[] bytes = new byte[input.remaining()];
+            input.get(bytes);
+            return bytes;
+        }
+    };
+
+    static final Codec<String> UTF8 = new Codec<>() {
+        @Override
+        public int sizeHint(String value) {
+            // Exact, so that no more room is allocated than the encoded string takes; an unpaired surrogate is replaced
+            // with a single byte
+            long size = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    size += 1;
+                } else if (c < 0x800) {
+                    size += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    size += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    size += 1;
+                } else {
+                    size += 3;
+                }
+            }
+            return (int) Math.min(Integer.MAX_VALUE, size);
+        }
+
+        @Override
+        public void encode(String value, ByteBuffer output) {
+            var encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            if (encoder.encode(CharBuffer.wrap(value), output, true).isOverflow() || encoder.flush(output).isOverflow()) {
+                throw new BufferOverflowException();
+            }
+        }
+
+        @Override
+        public String decode(ByteBuffer input) {
+            if (input.hasArray()) {
+                var string = new String(input.array(), input.arrayOffset() + input.position(), input.remaining(), StandardCharsets.UTF_8);
+                input.position(input.limit());
+                return string;
+            }
+            return StandardCharsets.UTF_8.decode(input).toString();
+        }
+    };
+
+    static final class Record<T> implements Codec<T> {
+        private final Codec.RecordWriter<T> writer;
+        private final Codec.RecordReader<T> reader;
+        // The largest value encoded so far, so that later values of a similar size are rarely encoded twice
+        private volatile int hint = 256;
+
+        Record(Codec.RecordWriter<T> writer, Codec.RecordReader<T> reader) {
+            this.writer = writer;
+            this.reader = reader;
+        }
+
+        @Override
+        public int sizeHint(T value) {
+            return hint;
+        }
+
+        @Override
+        public void encode(T value, ByteBuffer output) throws IOException {
+            int start = output.position();
+            writer.write(value, new BufferDataOutput(output));
+            int size = output.position() - start;
+            if (size > hint) {
+                hint = size;
+            }
+        }
+
+        @Override
+        public T decode(ByteBuffer input) throws IOException {
+            return reader.read(new BufferDataInput(input));
+        }
+    }
+
+    // Encodes a value into a heap buffer, growing it until the value fits, and returns the buffer flipped for reading;
+    // arrays are wrapped rather than copied
+    static <T> ByteBuffer encode(Codec<T> codec, T value) throws IOException {
+        if (codec == BYTES) {
+            return ByteBuffer.wrap((byte[]) value);
+        }
+        int size = Math.max(16, codec.sizeHint(value));
+        while (true) {
+            var buffer = ByteBuffer.allocate(size);
+            try {
+                codec.encode(value, buffer);
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                if (size == Integer.MAX_VALUE) {
+                    throw e;
+                }
+                size = size > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : size * 2;
+            }
+        }
+    }
+
+    // Decodes a value from an array that is not used elsewhere, which is returned as it is if the value is an array
+    @SuppressWarnings("unchecked")
+    static <T> T decode(Codec<T> codec, byte[] bytes) throws IOException {
+        if (codec == BYTES) {
+            return (T) bytes;
+        }
+        return codec.decode(ByteBuffer.wrap(bytes));
+    }
+
+    // Writes as DataOutputStream does, directly into a buffer; running out of room throws BufferOverflowException
+    private static final class BufferDataOutput implements DataOutput {
+        private final ByteBuffer buffer;
+
+        private BufferDataOutput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            buffer.put(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.put(b, off, len);
+        }
+
+        @Override
+        public void writeBoolean(boolean v) {
+            buffer.put((byte) (v ? 1 : 0));
+        }
+
+        @Override
+        public void writeByte(int v) {
+            buffer.put((byte) v);
+        }
+
+        @Override
+        public void writeShort(int v) {
+            buffer.putShort((short) v);
+        }
+
+        @Override
+        public void writeChar(int v) {
+            buffer.putChar((char) v);
+        }
+
+        @Override
+        public void writeInt(int v) {
+            buffer.putInt(v);
+        }
+
+        @Override
+        public void writeLong(long v) {
+            buffer.putLong(v);
+        }
+
+        @Override
+        public void writeFloat(float v) {
+            buffer.putFloat(v);
+        }
+
+        @Override
+        public void writeDouble(double v) {
+            buffer.putDouble(v);
+        }
+
+        @Override
+        public void writeBytes(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                buffer.put((byte) s.charAt(i));
+            }
+        }
+
+        @Override
+        public void writeChars(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                buffer.putChar(s.charAt(i));
+            }
+        }
+
+        @Override
+        public void writeUTF(String s) throws IOException {
+            // Modified UTF-8, preceded by its length, as DataOutputStream writes it
+            int length = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                length += c >= 1 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+            }
+            if (length > 0xFFFF) {
+                throw new UTFDataFormatException("Encoded string too long: " + length + " bytes");
+            }
+            buffer.putShort((short) length);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 1 && c <= 0x7F) {
+                    buffer.put((byte) c);
+                } else if (c <= 0x7FF) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+    }
+
+    // Reads as DataInputStream does, directly from a buffer; running out of bytes throws EOFException
+    private static final class BufferDataInput implements DataInput {
+        private final ByteBuffer buffer;
+
+        private BufferDataInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private ByteBuffer need(int bytes) throws EOFException {
+            if (buffer.remaining() < bytes) {
+                throw new EOFException();
+            }
+            return buffer;
+        }
+
+        @Override
+        public void readFully(byte[] b) throws IOException {
+            need(b.length).get(b);
+        }
+
+        @Override
+        public void readFully(byte[] b, int off, int len) throws IOException {
+            need(len).get(b, off, len);
+        }
+
+        @Override
+        public int skipBytes(int n) {
+            int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException {
+            return need(1).get() != 0;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return need(1).get();
+        }
+
+        @Override
+        public int readUnsignedByte() throws IOException {
+            return need(1).get() & 0xFF;
+        }
+
+        @Override
+        public short readShort() throws IOException {
+            return need(2).getShort();
+        }
+
+        @Override
+        public int readUnsignedShort() throws IOException {
+            return need(2).getShort() & 0xFFFF;
+        }
+
+        @Override
+        public char readChar() throws IOException {
+            return need(2).getChar();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return need(4).getInt();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            return need(8).getLong();
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            return need(4).getFloat();
+        }
+
+        @Override
+        public double readDouble() throws IOException {
+            return need(8).getDouble();
+        }
+
+        @Override
+        public @Nullable String readLine() {
+            if (!buffer.hasRemaining()) {
+                return null;
+            }
+            var line = new StringBuilder();
+            while (buffer.hasRemaining()) {
+                char c = (char) (buffer.get() & 0xFF);
+                if (c == '\n') {
+                    break;
+                }
+                if (c == '\r') {
+                    if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                        buffer.get();
+                    }
+                    break;
+                }
+                line.append(c);
+            }
+            return line.toString();
+        }
+
+        @Override
+        public String readUTF() throws IOException {
+            return DataInputStream.readUTF(this);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+// Caps the submissions in flight to one daemon, so that a burst waits in the parent instead of piling up in the
+// daemon's heap. An adaptive limit moves between 1 and the configured maximum: it grows by one each time a full
+// window of submissions completes without the round trip rising well above the fastest seen, and shrinks by a
+// fraction whenever it does, or a submission times out.
+final class ConcurrencyLimit {
+    // Round trips up to this multiple of the fastest seen are not taken as a sign of queueing
+    private static final double TOLERANCE = 2;
+    private static final double BACKOFF = 0.9;
+
+    private final int maximum;
+    private final boolean adaptive;
+    private final Executor handoff;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long fastest = Long.MAX_VALUE;
+
+    ConcurrencyLimit(int maximum, boolean adaptive, Executor handoff) {
+        this.maximum = maximum;
+        this.adaptive = adaptive;
+        this.handoff = handoff;
+        this.limit = maximum;
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    // Runs the action once a submission may be sent, which may be immediately on this thread, or later on the hand-off
+    // executor; never on the thread releasing a submission, which is usually the one reading results
+    void acquireLater(Runnable action) {
+        synchronized (this) {
+            if (inFlight >= (int) limit || !waiting.isEmpty()) {
+                waiting.add(action);
+                return;
+            }
+            inFlight++;
+        }
+        action.run();
+    }
+
+    // A negative round trip means the submission did not complete normally, and tells nothing about latency
+    void release(long roundTripNanos, boolean timedOut) {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (adaptive) {
+                if (timedOut || (roundTripNanos >= 0 && roundTripNanos > fastest * TOLERANCE)) {
+                    limit = Math.max(1, limit * BACKOFF);
+                } else if (roundTripNanos >= 0) {
+                    fastest = Math.min(fastest, roundTripNanos);
+                    limit = Math.min(maximum, limit + 1 / limit);
+                }
+            }
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                ready.add(waiting.poll());
+            }
+            notifyAll();
+        }
+        if (!ready.isEmpty()) {
+            // Run together, so that they are sent in the order they were queued
+            handoff.execute(() -> {
+                for (var action : ready) {
+                    action.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Creates the threads that each executor spends most of its time blocked in. Threads blocked on the socket, reading
+// results or writing frames, are virtual where the running JVM supports it, so that a parent with many executors parks
+// them on a few carrier threads instead of holding hundreds of idle platform threads. Threads forwarding the daemon's
+// output block reading process pipes, which would pin or add a carrier thread for as long as they wait, so they are
+// always platform daemon threads. This library targets Java 17, so virtual threads are found reflectively.
+final class DaemonThreads {
+    private static final @Nullable MethodHandle NEW_VIRTUAL = findVirtual();
+
+    private DaemonThreads() {}
+
+    private static @Nullable MethodHandle findVirtual() {
+        try {
+            var lookup = MethodHandles.publicLookup();
+            var builderClass = Class.forName("java.lang.Thread$Builder");
+            var ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(Class.forName("java.lang.Thread$Builder$OfVirtual")));
+            var name = lookup.findVirtual(builderClass, "name", MethodType.methodType(builderClass, String.class));
+            var unstarted = lookup.findVirtual(builderClass, "unstarted", MethodType.methodType(Thread.class, Runnable.class));
+            // (String, Runnable) -> Thread
+            var named = MethodHandles.collectArguments(name, 0, ofVirtual.asType(MethodType.methodType(builderClass)));
+            var handle = MethodHandles.collectArguments(unstarted, 0, named);
+            // Before Java 21 virtual threads are a preview feature, and fail to be created unless it is enabled
+            handle.invoke("ForkedTaskExecutor probe", (Runnable) () -> {});
+            return handle;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    static Thread newThread(String name, Runnable task) {
+        var newVirtual = NEW_VIRTUAL;
+        if (newVirtual != null) {
+            try {
+                return (Thread) newVirtual.invoke(name, task);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to create virtual thread", t);
+            }
+        }
+        var thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    static Thread start(String name, Runnable task) {
+        var thread = newThread(name, task);
+        thread.start();
+        return thread;
+    }
+
+    // For tasks that block in file or pipe reads, which a virtual thread cannot wait on without holding its carrier
+    static Thread startPlatform(String name, Runnable task) {
+        var thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -2,103 +2,347 @@
 
 import org.jspecify.annotations.Nullable;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 public final class ForkedTaskExecutor implements AutoCloseable {
     private final Process process;
     private final ResultListener listener;
+    private final @Nullable SharedMemory sharedMemory;
+    private final @Nullable ClassDataSharing classDataSharing;
+    private final @Nullable ConcurrencyLimit concurrencyLimit;
+    private final ForkedTaskExecutorSpec.Admission admission;
+    private final ForkedTaskExecutorMetrics metrics;
+    private final @Nullable ResultCache resultCache;
+    private final @Nullable SingleFlight singleFlight;
+    // The main task class, then any others, in the order the daemon indexes them
+    private final List<String> taskClasses;
+    // Exceptions thrown by the output sink, which are reported when the executor is closed
+    private final Queue<Throwable> outputFailures = new ConcurrentLinkedQueue<>();
 
     public ForkedTaskExecutor(ForkedTaskExecutorSpec spec) {
+        this(spec, spec.onShutdownRequest(), true, ResultCache.create(spec), spec.deduplicate() ? new SingleFlight() : null);
+    }
+
+    /**
+     * Starts a daemon on a separate thread, instead of blocking the caller until it is ready. The returned future
+     * completes once the daemon's task has warmed up and it has connected; if the future is completed or cancelled
+     * before then, the executor is closed as soon as it has started.
+     */
+    public static CompletableFuture<ForkedTaskExecutor> startAsync(ForkedTaskExecutorSpec spec) {
+        var out = new CompletableFuture<ForkedTaskExecutor>();
+        DaemonThreads.start("ForkedTaskExecutor startup", () -> {
+            try {
+                var executor = new ForkedTaskExecutor(spec);
+                if (!out.complete(executor)) {
+                    // Nobody is waiting for this executor any more, so nobody else would close it
+                    executor.close();
+                }
+            } catch (Throwable t) {
+                out.completeExceptionally(t);
+            }
+        });
+        return out;
+    }
+
+    // Allows owners such as ForkedTaskExecutorPool to hook shutdown requests for a specific child process; an owner that
+    // closes the executor itself once it is drained may refuse to let the child shut itself down. An owner that caches
+    // or groups submissions itself passes no cache or single flight.
+    ForkedTaskExecutor(ForkedTaskExecutorSpec spec, @Nullable Runnable onShutdownRequest, boolean allowShutdown, @Nullable ResultCache resultCache, @Nullable SingleFlight singleFlight) {
         var builder = new ProcessBuilder();
-        builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
-        builder.redirectError(ProcessBuilder.Redirect.PIPE);
+        ProcessBuilder.Redirect output;
+        switch (spec.output()) {
+            case INHERIT:
+                output = ProcessBuilder.Redirect.INHERIT;
+                break;
+            case DISCARD:
+                output = ProcessBuilder.Redirect.DISCARD;
+                break;
+            default:
+                output = ProcessBuilder.Redirect.PIPE;
+        }
+        builder.redirectOutput(output);
+        builder.redirectError(output);
         builder.redirectInput(ProcessBuilder.Redirect.PIPE);
-        List<String> args = new ArrayList<>();
-        args.add(spec.javaExecutable());
-        if (spec.hideStacktrace()) {
-            args.add("-Ddev.lukebemish.forkedtaskexecutor.hidestacktrace=true");
-        }
-        args.addAll(spec.jvmOptions());
-        args.add("dev.lukebemish.forkedtaskexecutor.runner.Main");
-        args.add(spec.taskClass());
-        args.addAll(spec.programOptions());
-        builder.command(args);
+        this.concurrencyLimit = spec.maxInFlight() > 0 ? new ConcurrencyLimit(spec.maxInFlight(), spec.adaptiveConcurrency(), ForkJoinPool.commonPool()) : null;
+        this.admission = spec.admission();
+        this.metrics = new ForkedTaskExecutorMetrics(spec.metricsListener());
+        this.resultCache = resultCache;
+        this.singleFlight = singleFlight;
+        List<String> taskClasses = new ArrayList<>();
+        taskClasses.add(spec.taskClass());
+        taskClasses.addAll(spec.additionalTaskClasses());
+        this.taskClasses = List.copyOf(taskClasses);
         try {
-            this.process = builder.start();
+            this.sharedMemory = spec.sharedMemoryThreshold() >= 0 ? SharedMemory.create(spec.sharedMemoryDirectory(), spec.sharedMemoryThreshold()) : null;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        CompletableFuture<String> socketPort = new CompletableFuture<>();
-        var thread = new StreamWrapper(process.getInputStream(), socketPort);
-        new Thread(() -> {
+        try {
+            this.classDataSharing = spec.classDataSharingDirectory() != null ? ClassDataSharing.prepare(spec.classDataSharingDirectory(), spec) : null;
+        } catch (IOException e) {
+            if (sharedMemory != null) {
+                try {
+                    sharedMemory.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new RuntimeException(e);
+        }
+        try (var endpoint = Endpoint.open(spec.transport())) {
+            List<String> args = new ArrayList<>();
+            args.add(spec.javaExecutable());
+            if (spec.hideStacktrace()) {
+                args.add("-Ddev.lukebemish.forkedtaskexecutor.hidestacktrace=true");
+            }
+            // The child connects back to this address once it is ready
+            args.add("-Ddev.lukebemish.forkedtaskexecutor.address=" + endpoint.address);
+            if (sharedMemory != null) {
+                args.add("-Ddev.lukebemish.forkedtaskexecutor.sharedmemory=" + sharedMemory.directory());
+                args.add("-Ddev.lukebemish.forkedtaskexecutor.sharedmemorythreshold=" + sharedMemory.threshold());
+            }
+            args.add("-Ddev.lukebemish.forkedtaskexecutor.scheduler=" + spec.scheduler().name());
+            if (spec.parallelism() > 0) {
+                args.add("-Ddev.lukebemish.forkedtaskexecutor.parallelism=" + spec.parallelism());
+            }
+            if (!spec.additionalTaskClasses().isEmpty()) {
+                // Class names cannot contain commas
+                args.add("-Ddev.lukebemish.forkedtaskexecutor.tasks=" + String.join(",", spec.additionalTaskClasses()));
+            }
+            if (spec.heartbeatInterval() != null) {
+                args.add("-Ddev.lukebemish.forkedtaskexecutor.heartbeat=" + spec.heartbeatInterval().toMillis());
+            }
+            if (classDataSharing != null) {
+                args.addAll(classDataSharing.jvmOptions());
+            }
+            args.addAll(spec.jvmOptions());
+            args.add("dev.lukebemish.forkedtaskexecutor.runner.Main");
+            args.add(spec.taskClass());
+            args.addAll(spec.programOptions());
+            builder.command(args);
+            this.process = builder.start();
+            if (output == ProcessBuilder.Redirect.PIPE) {
+                DaemonThreads.startPlatform("ForkedTaskExecutor stdout", new StreamWrapper(process.getInputStream(), ForkedTaskExecutorSpec.OutputSink.Stream.STDOUT, spec));
+                DaemonThreads.startPlatform("ForkedTaskExecutor stderr", new StreamWrapper(process.getErrorStream(), ForkedTaskExecutorSpec.OutputSink.Stream.STDERR, spec));
+            }
             try {
-                InputStreamReader reader = new InputStreamReader(process.getErrorStream());
-                BufferedReader bufferedReader = new BufferedReader(reader);
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    System.err.println(line);
+                this.listener = new ResultListener(endpoint.accept(process, spec.startupTimeout().toMillis()), onShutdownRequest, allowShutdown, sharedMemory, metrics);
+            } catch (IOException | RuntimeException e) {
+                process.destroy();
+                throw e;
+            }
+            this.listener.start();
+        } catch (IOException | RuntimeException e) {
+            if (sharedMemory != null) {
+                try {
+                    sharedMemory.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
                 }
-            } catch (IOException e) {
-                if (ForkedTaskExecutor.this.listener.closed.get()) {
-                    // The listener closed, possibly closing this stream as we were processing a line; this is fine
-                    return;
+            }
+            if (classDataSharing != null) {
+                try {
+                    classDataSharing.abandon();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
                 }
-                throw new UncheckedIOException(e);
             }
-        }).start();
-        thread.start();
-        try {
-            String socketPortString = socketPort.get(4000, TimeUnit.MILLISECONDS);
-            int port = Integer.parseInt(socketPortString);
-            this.listener = new ResultListener(new Socket(InetAddress.getLoopbackAddress(), port), spec.onShutdownRequest());
-            this.listener.start();
-        } catch (InterruptedException | ExecutionException | TimeoutException | IOException e) {
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
             throw new RuntimeException(e);
         }
     }
 
-    private final class StreamWrapper extends Thread {
+    // The code a daemon exits with if its Java runtime cannot run the scheduler it was asked for
+    private static final int UNSUPPORTED_EXIT_CODE = 2;
+
+    // The parent listens, and the child connects, so no address needs to be read back from the child
+    private static final class Endpoint implements AutoCloseable {
+        private final ServerSocketChannel server;
+        private final String address;
+        private final @Nullable Path directory;
+
+        private Endpoint(ServerSocketChannel server, String address, @Nullable Path directory) {
+            this.server = server;
+            this.address = address;
+            this.directory = directory;
+        }
+
+        static Endpoint open(ForkedTaskExecutorSpec.Transport transport) throws IOException {
+            switch (transport) {
+                case TCP:
+                    return openTcp();
+                case UNIX_DOMAIN:
+                    return openUnixDomain();
+                default:
+                    try {
+                        return openUnixDomain();
+                    } catch (IOException | UnsupportedOperationException e) {
+                        return openTcp();
+                    }
+            }
+        }
+
+        private static Endpoint openTcp() throws IOException {
+            var server = ServerSocketChannel.open(StandardProtocolFamily.INET);
+            try {
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+                return new Endpoint(server, "tcp:" + port, null);
+            } catch (IOException | RuntimeException e) {
+                server.close();
+                throw e;
+            }
+        }
+
+        private static Endpoint openUnixDomain() throws IOException {
+            var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            Path directory = null;
+            try {
+                directory = Files.createTempDirectory("forkedtaskexecutor");
+                var path = directory.resolve("socket");
+                server.bind(UnixDomainSocketAddress.of(path));
+                return new Endpoint(server, "unix:" + path, directory);
+            } catch (IOException | RuntimeException e) {
+                server.close();
+                if (directory != null) {
+                    Files.deleteIfExists(directory.resolve("socket"));
+                    Files.deleteIfExists(directory);
+                }
+                throw e;
+            }
+        }
+
+        SocketChannel accept(Process process, long timeoutMillis) throws IOException {
+            server.configureBlocking(false);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try (var selector = Selector.open()) {
+                server.register(selector, SelectionKey.OP_ACCEPT);
+                while (true) {
+                    var channel = server.accept();
+                    if (channel != null) {
+                        channel.configureBlocking(true);
+                        if (directory == null) {
+                            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        }
+                        return channel;
+                    }
+                    if (!process.isAlive()) {
+                        if (process.exitValue() == UNSUPPORTED_EXIT_CODE) {
+                            throw new IOException("Daemon exited before connecting, as its Java runtime does not support the requested scheduler; " + ForkedTaskExecutorSpec.Scheduler.VIRTUAL_THREADS + " requires Java 21 or newer");
+                        }
+                        throw new IOException("Daemon exited with code " + process.exitValue() + " before connecting");
+                    }
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        throw new IOException("Daemon did not connect within " + timeoutMillis + "ms");
+                    }
+                    // Wake periodically to notice a daemon that died during startup
+                    selector.select(Math.min(remaining, 100));
+                    selector.selectedKeys().clear();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            if (directory != null) {
+                // Once the child has connected, the socket file is no longer needed
+                Files.deleteIfExists(directory.resolve("socket"));
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+
+    // Copies one of the daemon's output streams as bytes. Unless forwarding raw output, each chunk passed on ends at the
+    // last line break read so far, so that whole lines are written at once; a line longer than the buffer is split.
+    private final class StreamWrapper implements Runnable {
+        private static final int BUFFER_SIZE = 8192;
+
         private final InputStream stream;
-        private final CompletableFuture<String> socketPort;
+        private final ForkedTaskExecutorSpec.OutputSink.Stream kind;
+        private final ForkedTaskExecutorSpec.Output output;
+        private final ForkedTaskExecutorSpec.@Nullable OutputSink sink;
+        private final byte @Nullable [] tag;
+        private boolean sinkFailed;
+        // Whether the next byte forwarded starts a line, and so is preceded by the tag
+        private boolean lineStart = true;
 
-        private StreamWrapper(InputStream stream, CompletableFuture<String> socketPort) {
+        private StreamWrapper(InputStream stream, ForkedTaskExecutorSpec.OutputSink.Stream kind, ForkedTaskExecutorSpec spec) {
             this.stream = stream;
-            this.socketPort = socketPort;
-            this.setUncaughtExceptionHandler((t, e) -> {
-                socketPort.completeExceptionally(e);
-                StreamWrapper.this.getThreadGroup().uncaughtException(t, e);
-            });
+            this.kind = kind;
+            this.output = spec.output();
+            this.sink = spec.outputSink();
+            this.tag = spec.tagOutput() ? ("[" + process.pid() + "] ").getBytes(StandardCharsets.US_ASCII) : null;
         }
 
         @Override
         public void run() {
-            try {
-                var reader = new BufferedReader(new InputStreamReader(stream));
-                socketPort.complete(Objects.requireNonNull(reader.readLine(), "No port provided by daemon"));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    System.out.println(line);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int filled = 0;
+            try (stream) {
+                int read;
+                while ((read = stream.read(buffer, filled, buffer.length - filled)) >= 0) {
+                    filled += read;
+                    int end = filled;
+                    if (output != ForkedTaskExecutorSpec.Output.RAW && filled < buffer.length) {
+                        // Earlier bytes held back had no line break, so only the new ones need searching
+                        end = 0;
+                        for (int i = filled - 1; i >= filled - read; i--) {
+                            if (buffer[i] == '\n') {
+                                end = i + 1;
+                                break;
+                            }
+                        }
+                    }
+                    if (end > 0) {
+                        forward(buffer, end);
+                        System.arraycopy(buffer, end, buffer, 0, filled - end);
+                        filled -= end;
+                    }
+                }
+                if (filled > 0) {
+                    forward(buffer, filled);
                 }
             } catch (IOException exception) {
                 if (ForkedTaskExecutor.this.listener.closed.get()) {
@@ -108,40 +352,209 @@ public void run() {
                 throw new UncheckedIOException(exception);
             }
         }
+
+        private void forward(byte[] buffer, int length) {
+            var sink = this.sink;
+            if (output == ForkedTaskExecutorSpec.Output.SINK && sink != null) {
+                if (sinkFailed) {
+                    return;
+                }
+                try {
+                    sink.accept(process.pid(), kind, buffer, 0, length);
+                } catch (IOException | RuntimeException e) {
+                    // Keep draining the stream, so that the daemon does not block on a full pipe
+                    sinkFailed = true;
+                    outputFailures.add(e);
+                }
+                return;
+            }
+            var target = kind == ForkedTaskExecutorSpec.OutputSink.Stream.STDOUT ? System.out : System.err;
+            var tag = this.tag;
+            if (tag == null) {
+                target.write(buffer, 0, length);
+                return;
+            }
+            int lines = 0;
+            for (int i = 0; i < length; i++) {
+                if (i == 0 ? lineStart : buffer[i - 1] == '\n') {
+                    lines++;
+                }
+            }
+            // Still written at once, so that tagged lines from different daemons are not interleaved
+            byte[] tagged = new byte[length + lines * tag.length];
+            int position = 0;
+            for (int i = 0; i < length; i++) {
+                if (lineStart) {
+                    System.arraycopy(tag, 0, tagged, position, tag.length);
+                    position += tag.length;
+                    lineStart = false;
+                }
+                tagged[position++] = buffer[i];
+                lineStart = buffer[i] == '\n';
+            }
+            target.write(tagged, 0, position);
+        }
     }
 
     private static final class SocketHandle {
-        private final DataOutputStream output;
+        private final FrameWriter output;
         private final DataInputStream input;
-        private final Socket socket;
+        private final SocketChannel socket;
+        private final @Nullable SharedMemory sharedMemory;
 
-        private SocketHandle(Socket socket) throws IOException {
-            this.output = new DataOutputStream(socket.getOutputStream());
-            this.input = new DataInputStream(socket.getInputStream());
+        private SocketHandle(SocketChannel socket, @Nullable SharedMemory sharedMemory, ForkedTaskExecutorMetrics metrics) {
+            this.output = new FrameWriter(socket, "ForkedTaskExecutor writer", metrics::sent);
+            this.input = new DataInputStream(new BufferedInputStream(inputStream(socket, metrics::received)));
             this.socket = socket;
+            this.sharedMemory = sharedMemory;
+            this.output.start();
+        }
+
+        // Channels.newInputStream locks out writes to the channel on Java 17, so reads go straight to the channel
+        // instead.
+        private static InputStream inputStream(SocketChannel channel, LongConsumer onRead) {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    int read = read(single, 0, 1);
+                    return read < 0 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    Objects.checkFromIndexSize(off, len, b.length);
+                    if (len == 0) {
+                        return 0;
+                    }
+                    int read = channel.read(ByteBuffer.wrap(b, off, len));
+                    if (read > 0) {
+                        onRead.accept(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        // Frames are queued for the writer thread rather than written here, so no caller blocks on the socket
+
+        // A negative timeout means the submission has no deadline; options the daemon would assume are left out
+        private static ByteBuffer submissionHeader(int id, int task, long timeoutNanos, Priority priority, int extra) {
+            int size = 4 + extra;
+            if (task != 0) {
+                size += 8;
+            }
+            if (timeoutNanos >= 0) {
+                size += 12;
+            }
+            if (priority != Priority.NORMAL) {
+                size += 5;
+            }
+            var header = ByteBuffer.allocate(size).putInt(id);
+            if (task != 0) {
+                // A length of -5 means the index of the task to run follows, and then the actual length
+                header.putInt(-5).putInt(task);
+            }
+            if (timeoutNanos >= 0) {
+                // A length of -3 means a timeout in nanoseconds follows, and then the actual length
+                header.putInt(-3).putLong(timeoutNanos);
+            }
+            if (priority != Priority.NORMAL) {
+                // A length of -4 means a priority follows, and then the actual length
+                header.putInt(-4).put(priorityByte(priority));
+            }
+            return header;
+        }
+
+        // The daemon's numbers for each priority, which are not tied to the order of the enum's constants
+        private static byte priorityByte(Priority priority) {
+            switch (priority) {
+                case HIGH:
+                    return 0;
+                case LOW:
+                    return 2;
+                default:
+                    return 1;
+            }
+        }
+
+        // The input belongs to the writer thread once queued
+        void writeSubmission(int id, int task, long timeoutNanos, Priority priority, ByteBuffer input) throws IOException {
+            output.write(submissionHeader(id, task, timeoutNanos, priority, 4).putInt(input.remaining()).flip(), input);
+        }
+
+        void writeSharedSubmission(int id, int task, long timeoutNanos, Priority priority, String name) throws IOException {
+            // Names are plain ASCII, so this matches what DataInput.readUTF expects
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            // A length of -1 means the input is in the named shared memory file
+            output.write(submissionHeader(id, task, timeoutNanos, priority, 6 + bytes.length).putInt(-1).putShort((short) bytes.length).put(bytes).flip());
+        }
+
+        // Several submissions in one frame, written as one so that no other frame lands between them; inputs are copied
+        // in, so should be small
+        void writeBatch(int[] ids, int task, List<byte[]> inputs) throws IOException {
+            int size = 0;
+            for (var input : inputs) {
+                size += 8 + input.length;
+                if (task != 0) {
+                    size += 8;
+                }
+            }
+            var payload = ByteBuffer.allocate(size);
+            for (int i = 0; i < ids.length; i++) {
+                var input = inputs.get(i);
+                payload.putInt(ids[i]);
+                if (task != 0) {
+                    // Each submission in a batch is in the usual format, so may name its task as any other does
+                    payload.putInt(-5).putInt(task);
+                }
+                payload.putInt(input.length).put(input);
+            }
+            output.write(ByteBuffer.allocate(8).putInt(-6).putInt(ids.length).flip(), payload.flip());
+        }
+
+        void writeStreamSubmission(int id, int task) throws IOException {
+            // A length of -2 means the input follows as chunks, and the result should be sent back as chunks
+            output.write(submissionHeader(id, task, -1, Priority.NORMAL, 4).putInt(-2).flip());
         }
 
-        synchronized void writeSubmission(int id, byte[] input) throws IOException {
-            output.writeInt(id);
-            output.writeInt(input.length);
-            output.write(input);
-            output.flush();
+        void writeChunk(int id, ByteBuffer chunk) throws IOException {
+            output.write(ByteBuffer.allocate(12).putInt(-3).putInt(id).putInt(chunk.remaining()).flip(), chunk);
         }
 
-        synchronized void writeAllowShutdown() throws IOException {
-            output.writeInt(-2);
-            output.flush();
+        // A length of -1 ends a stream, and -2 aborts it
+        void writeChunkEnd(int id, int length) throws IOException {
+            output.write(ByteBuffer.allocate(12).putInt(-3).putInt(id).putInt(length).flip());
+        }
+
+        void writeChunkEndQuietly(int id, int length) {
+            try {
+                writeChunkEnd(id, length);
+            } catch (IOException e) {
+                // The socket is gone, so the result will fail regardless
+            }
+        }
+
+        void writeCredit(int id, int chunks) throws IOException {
+            output.write(ByteBuffer.allocate(12).putInt(-4).putInt(id).putInt(chunks).flip());
+        }
+
+        void writeCancel(int id) throws IOException {
+            output.write(ByteBuffer.allocate(8).putInt(-5).putInt(id).flip());
+        }
+
+        void writeAllowShutdown() throws IOException {
+            output.write(ByteBuffer.allocate(4).putInt(-2).flip());
         }
 
         // Will be true only if a shutdown signal is successfully sent to the channel.
         private volatile boolean gracefulShutdown = false;
 
-        synchronized void shutdown() throws IOException {
+        void shutdown() throws IOException {
             try {
                 // -1 ID signals the end of submissions
-                output.writeInt(-1);
-                output.flush();
-                this.gracefulShutdown = true;
+                output.write(ByteBuffer.allocate(4).putInt(-1).flip());
+                this.gracefulShutdown = output.finish();
             } finally {
                 // Then close the socket
                 socket.close();
@@ -151,7 +564,7 @@ synchronized void shutdown() throws IOException {
         int readId() throws IOException {
             try {
                 return input.readInt();
-            } catch (SocketException e) {
+            } catch (IOException e) {
                 // Could be the socket is intentionally closed during cleanup, could be something went sideways.
                 // To differentiate -- check gracefulShutdown
                 if (gracefulShutdown) {
@@ -161,27 +574,239 @@ int readId() throws IOException {
             }
         }
 
-        boolean readSuccess() throws IOException {
-            return input.readBoolean();
+        int readInt() throws IOException {
+            return input.readInt();
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            return input.readNBytes(length);
+        }
+
+        // 0 is a failure, 1 a success followed by the result, and 2 a submission whose deadline passed
+        byte readStatus() throws IOException {
+            return input.readByte();
+        }
+
+        long readLong() throws IOException {
+            return input.readLong();
         }
 
         byte[] readResult() throws IOException {
             int length = input.readInt();
+            if (length == -1) {
+                String name = input.readUTF();
+                return Objects.requireNonNull(sharedMemory, "Daemon sent a shared memory result, but shared memory is disabled").read(name);
+            }
             return input.readNBytes(length);
         }
     }
 
-    private static final class ResultListener extends Thread {
-        private final Map<Integer, CompletableFuture<byte[]>> results = new ConcurrentHashMap<>();
+    // The input of a streamed submission, which is sent as the daemon grants credit for it
+    private interface StreamedInput {
+        void start();
+
+        void credit(int chunks);
+
+        // Called once the daemon has finished the result, whether or not it read all the input
+        void cancel();
+    }
+
+    private static final class InputStreamSender implements StreamedInput, Runnable {
+        private final int id;
+        private final InputStream input;
+        private final SocketHandle socketHandle;
+        private final Semaphore credits = new Semaphore(ChunkInputStream.WINDOW);
+        private volatile boolean cancelled;
+
+        private InputStreamSender(int id, InputStream input, SocketHandle socketHandle) {
+            this.id = id;
+            this.input = input;
+            this.socketHandle = socketHandle;
+        }
+
+        @Override
+        public void start() {
+            DaemonThreads.start("ForkedTaskExecutor stream " + id, this);
+        }
+
+        @Override
+        public void credit(int chunks) {
+            credits.release(chunks);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            credits.release();
+        }
+
+        @Override
+        public void run() {
+            try (input) {
+                while (true) {
+                    // Each chunk gets its own buffer, as the writer thread may not have sent the last one yet
+                    byte[] buffer = new byte[ChunkInputStream.CHUNK_SIZE];
+                    int read = input.read(buffer);
+                    credits.acquire();
+                    if (cancelled) {
+                        return;
+                    }
+                    if (read < 0) {
+                        socketHandle.writeChunkEnd(id, -1);
+                        return;
+                    }
+                    socketHandle.writeChunk(id, ByteBuffer.wrap(buffer, 0, read));
+                }
+            } catch (IOException | InterruptedException e) {
+                if (!cancelled) {
+                    socketHandle.writeChunkEndQuietly(id, -2);
+                }
+            }
+        }
+    }
+
+    // Published buffers are sent in slices of at most a chunk, as credit for each slice is granted, so that a large
+    // buffer is not sent as one frame; the next buffer is only requested once every slice of the last has been sent
+    private static final class PublisherSender implements StreamedInput, Flow.Subscriber<ByteBuffer> {
+        private final int id;
+        private final Flow.Publisher<ByteBuffer> input;
+        private final SocketHandle socketHandle;
+        private final Queue<ByteBuffer> slices = new ArrayDeque<>();
+        private Flow.@Nullable Subscription subscription;
+        private int credits = ChunkInputStream.WINDOW;
+        private boolean requested;
+        private boolean completed;
+        private boolean ended;
+        private volatile boolean cancelled;
+
+        private PublisherSender(int id, Flow.Publisher<ByteBuffer> input, SocketHandle socketHandle) {
+            this.id = id;
+            this.input = input;
+            this.socketHandle = socketHandle;
+        }
+
+        @Override
+        public void start() {
+            input.subscribe(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (this) {
+                this.subscription = subscription;
+            }
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                drain();
+            }
+        }
+
+        @Override
+        public synchronized void onNext(ByteBuffer item) {
+            requested = false;
+            if (cancelled) {
+                return;
+            }
+            var remaining = item.duplicate();
+            while (remaining.hasRemaining()) {
+                int length = Math.min(remaining.remaining(), ChunkInputStream.CHUNK_SIZE);
+                slices.add(remaining.slice().limit(length));
+                remaining.position(remaining.position() + length);
+            }
+            drain();
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            // Slices not yet sent are dropped, as the daemon is told the input failed
+            slices.clear();
+            end(-2);
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            completed = true;
+            drain();
+        }
+
+        @Override
+        public synchronized void credit(int chunks) {
+            credits += chunks;
+            drain();
+        }
+
+        // Sends as many slices as there is credit for, then either ends the input or requests the next buffer; a
+        // publisher may call onNext from within request, which drains again
+        private synchronized void drain() {
+            var subscription = this.subscription;
+            if (cancelled || ended || subscription == null) {
+                return;
+            }
+            try {
+                while (credits > 0 && !slices.isEmpty()) {
+                    socketHandle.writeChunk(id, slices.poll());
+                    credits--;
+                }
+            } catch (IOException e) {
+                cancel();
+                return;
+            }
+            if (!slices.isEmpty()) {
+                return;
+            }
+            if (completed) {
+                end(-1);
+            } else if (credits > 0 && !requested) {
+                requested = true;
+                subscription.request(1);
+            }
+        }
+
+        private void end(int length) {
+            if (cancelled || ended) {
+                return;
+            }
+            ended = true;
+            socketHandle.writeChunkEndQuietly(id, length);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Flow.Subscription subscription;
+            synchronized (this) {
+                slices.clear();
+                subscription = this.subscription;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private static final class ResultListener implements Runnable {
+        private final PendingResults results = new PendingResults(PENDING_CAPACITY);
+        private final Map<Integer, ChunkInputStream> resultStreams = new ConcurrentHashMap<>();
+        private final Map<Integer, StreamedInput> inputStreams = new ConcurrentHashMap<>();
         private final SocketHandle socketHandle;
         private final @Nullable Runnable onShutdownRequest;
+        private final boolean allowShutdown;
+        private final @Nullable SharedMemory sharedMemory;
+        private final ForkedTaskExecutorMetrics metrics;
+        private final Thread thread;
         // Handle uncaught exceptions by re-throwing them on shutdown
         private volatile Throwable thrownException;
+        private volatile @Nullable ForkedTaskExecutorHealth health;
 
-        private ResultListener(Socket socket, @Nullable Runnable onShutdownRequest) throws IOException {
-            this.socketHandle = new SocketHandle(socket);
+        private ResultListener(SocketChannel socket, @Nullable Runnable onShutdownRequest, boolean allowShutdown, @Nullable SharedMemory sharedMemory, ForkedTaskExecutorMetrics metrics) {
+            this.socketHandle = new SocketHandle(socket, sharedMemory, metrics);
+            this.metrics = metrics;
             this.onShutdownRequest = onShutdownRequest;
-            this.setUncaughtExceptionHandler((t, e) -> {
+            this.allowShutdown = allowShutdown;
+            this.sharedMemory = sharedMemory;
+            this.thread = DaemonThreads.newThread("ForkedTaskExecutor listener", this);
+            this.thread.setUncaughtExceptionHandler((t, e) -> {
                 try {
                     shutdown(e);
                     thrownException = e;
@@ -193,14 +818,95 @@ private ResultListener(Socket socket, @Nullable Runnable onShutdownRequest) thro
             });
         }
 
+        void start() {
+            thread.start();
+        }
+
         // Non-blocking, returns a future that will complete when the result is available (or throws if the listener is closed early unexpectedly)
-        public CompletableFuture<byte[]> submit(int id, byte[] input) throws IOException {
+        public CompletableFuture<byte[]> submit(int id, int task, ByteBuffer input, long timeoutNanos, Priority priority) throws IOException {
             if (closed.get()) {
                 return CompletableFuture.failedFuture(new IOException("Listener is closed"));
             }
-            var out = results.computeIfAbsent(id, i -> new CompletableFuture<>());
+            var out = results.add(id);
+            out.sentAt = System.nanoTime();
+            metrics.submit();
             // Submissions to the child process take the format ID, input bytes -- the ID lets the result be matched up
-            socketHandle.writeSubmission(id, input);
+            var sharedMemory = this.sharedMemory;
+            if (sharedMemory != null && sharedMemory.shouldShare(input.remaining())) {
+                String name = sharedMemory.write("in-" + id, input);
+                // The daemon is done with the input once it has answered; a cancelled input is deleted when the answer arrives
+                out.whenComplete((result, t) -> {
+                    if (!out.isCancelled()) {
+                        sharedMemory.delete(name);
+                    }
+                });
+                socketHandle.writeSharedSubmission(id, task, timeoutNanos, priority, name);
+            } else {
+                socketHandle.writeSubmission(id, task, timeoutNanos, priority, input);
+            }
+            // The submission stays pending until the daemon answers, so that its answer can be told apart and dropped
+            out.whenComplete((result, t) -> {
+                if (out.isCancelled()) {
+                    cancel(id);
+                }
+            });
+            return out;
+        }
+
+        // Non-blocking, as for submit; the futures are in the order of the inputs
+        public List<CompletableFuture<byte[]>> submitAll(int[] ids, int task, List<byte[]> inputs) throws IOException {
+            List<CompletableFuture<byte[]>> outs = new ArrayList<>(ids.length);
+            if (closed.get()) {
+                for (int i = 0; i < ids.length; i++) {
+                    outs.add(CompletableFuture.failedFuture(new IOException("Listener is closed")));
+                }
+                return outs;
+            }
+            long sentAt = System.nanoTime();
+            for (int id : ids) {
+                var out = results.add(id);
+                out.sentAt = sentAt;
+                metrics.submit();
+                outs.add(out);
+            }
+            socketHandle.writeBatch(ids, task, inputs);
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                var out = outs.get(i);
+                out.whenComplete((result, t) -> {
+                    if (out.isCancelled()) {
+                        cancel(id);
+                    }
+                });
+            }
+            return outs;
+        }
+
+        private void cancel(int id) {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                socketHandle.writeCancel(id);
+            } catch (IOException e) {
+                // The socket is gone, so the daemon is stopping regardless
+            }
+        }
+
+        // Non-blocking, returns a stream of the result, which will fail if the listener is closed early unexpectedly
+        public InputStream submitStream(int id, int task, StreamedInput input) throws IOException {
+            var out = new ChunkInputStream(chunks -> socketHandle.writeCredit(id, chunks));
+            resultStreams.put(id, out);
+            inputStreams.put(id, input);
+            if (closed.get()) {
+                // Either shutdown already failed this stream, or it never saw it
+                resultStreams.remove(id);
+                inputStreams.remove(id);
+                out.abort(new IOException("Listener is closed"));
+                return out;
+            }
+            socketHandle.writeStreamSubmission(id, task);
+            input.start();
             return out;
         }
 
@@ -215,7 +921,7 @@ public void ensureShutdown() throws Throwable {
             shutdown(new IOException("Execution was interrupted"));
 
             try {
-                this.join();
+                this.thread.join();
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
@@ -237,7 +943,7 @@ private void shutdown(Throwable t) throws IOException {
             - stop the child process (by sending it a "shutdown" signal with ID -1)
             - stop the thread if it is running. The thread could be waiting at a number of places. Either:
               - the readId() call, if everything is running normally
-              - the readResult() or readSuccess() call, if something is going badly wrong in the child process
+              - the readResult() or readStatus() call, if something is going badly wrong in the child process
               - not waiting, just in the loop -- the "closed" flag will be checked at the top of the loop
               to stop in either of these cases, we simply close the socket; this results in anything blocking on reading
               from the socket throwing an exception (see Socket#close()).
@@ -246,10 +952,20 @@ from the socket throwing an exception (see Socket#close()).
             // Prevent multiple concurrent shutdowns
             if (!this.closed.compareAndSet(false, true)) return;
 
-            for (var future : results.values()) {
+            results.removeAll(future -> {
+                // Counted as answered, so that they are not left in flight
+                metrics.unanswered(future.isCancelled() ? ForkedTaskExecutorMetrics.Outcome.CANCELLED : ForkedTaskExecutorMetrics.Outcome.FAILURE);
                 future.completeExceptionally(t);
+            });
+            var failure = t instanceof IOException ? (IOException) t : new IOException(t);
+            for (var stream : resultStreams.values()) {
+                stream.abort(failure);
             }
-            results.clear();
+            resultStreams.clear();
+            for (var input : inputStreams.values()) {
+                input.cancel();
+            }
+            inputStreams.clear();
 
             socketHandle.shutdown();
         }
@@ -264,30 +980,103 @@ public void run() {
                             // The child process is attempting to restart itself
                             if (onShutdownRequest != null) {
                                 onShutdownRequest.run();
-                                if (results.isEmpty()) {
+                                if (allowShutdown && results.isEmpty() && resultStreams.isEmpty()) {
                                     // We assume that this executor has been properly detached from anything that could submit results; it may shut down now if it wishes
                                     socketHandle.writeAllowShutdown();
-                                    continue;
                                 }
                             }
+                            // Shutdown requests carry no result
+                            continue;
+                        } else if (id == -3) {
+                            // A chunk of a streamed result
+                            int streamId = socketHandle.readInt();
+                            int length = socketHandle.readInt();
+                            if (length >= 0) {
+                                byte[] chunk = socketHandle.readBytes(length);
+                                var stream = resultStreams.get(streamId);
+                                if (stream != null) {
+                                    stream.accept(chunk);
+                                }
+                            } else {
+                                var stream = resultStreams.remove(streamId);
+                                var input = inputStreams.remove(streamId);
+                                if (input != null) {
+                                    // The daemon is done with the input, whether or not it read all of it
+                                    input.cancel();
+                                }
+                                if (stream != null) {
+                                    if (length == -1) {
+                                        stream.finish();
+                                    } else {
+                                        stream.abort(new IOException("Process failed"));
+                                    }
+                                }
+                            }
+                            continue;
+                        } else if (id == -4) {
+                            // The daemon has read chunks of a streamed input, and may be sent more
+                            int streamId = socketHandle.readInt();
+                            int chunks = socketHandle.readInt();
+                            var input = inputStreams.get(streamId);
+                            if (input != null) {
+                                input.credit(chunks);
+                            }
+                            continue;
+                        } else if (id == -5) {
+                            // A heartbeat, reporting the daemon's resource usage
+                            health = new ForkedTaskExecutorHealth(
+                                socketHandle.readLong(),
+                                socketHandle.readLong(),
+                                socketHandle.readLong(),
+                                socketHandle.readLong(),
+                                socketHandle.readLong(),
+                                socketHandle.readLong(),
+                                socketHandle.readInt(),
+                                socketHandle.readInt(),
+                                socketHandle.readInt(),
+                                health
+                            );
+                            continue;
                         } else if (id < 0) {
                             // The child process has been sent a shutdown signal gracefully
                             shutdown(new IOException("Listener is closed"));
                             break;
                         }
-                        boolean success = socketHandle.readSuccess();
-                        if (success) {
-                            byte[] result = socketHandle.readResult();
-                            var future = results.remove(id);
-                            if (future != null) {
-                                future.complete(result);
+                        byte status = socketHandle.readStatus();
+                        // Every answer carries the daemon's queue depth, and how long the submission waited and ran
+                        int daemonQueueDepth = socketHandle.readInt();
+                        long queueNanos = socketHandle.readLong();
+                        long runNanos = socketHandle.readLong();
+                        byte @Nullable [] result = status == 1 ? socketHandle.readResult() : null;
+                        PendingResults.Pending future = results.remove(id);
+                        if (future == null) {
+                            continue;
+                        }
+                        // Recorded before the future completes, so that a caller woken by it sees its own submission
+                        // in the metrics
+                        ForkedTaskExecutorMetrics.Outcome outcome;
+                        boolean cancelled = future.isCancelled();
+                        if (cancelled) {
+                            outcome = ForkedTaskExecutorMetrics.Outcome.CANCELLED;
+                            if (sharedMemory != null) {
+                                sharedMemory.delete("in-" + id);
                             }
+                        } else if (status == 1) {
+                            outcome = ForkedTaskExecutorMetrics.Outcome.SUCCESS;
+                        } else if (status == 2) {
+                            outcome = ForkedTaskExecutorMetrics.Outcome.TIMEOUT;
                         } else {
-                            var future = results.remove(id);
-                            if (future != null) {
-                                var exception = new RuntimeException("Process failed");
-                                future.completeExceptionally(exception);
-                            }
+                            outcome = ForkedTaskExecutorMetrics.Outcome.FAILURE;
+                        }
+                        metrics.answered(outcome, System.nanoTime() - future.sentAt, queueNanos, runNanos, daemonQueueDepth);
+                        if (cancelled) {
+                            // A cancelled submission ignores its late result
+                            continue;
+                        }
+                        if (status == 1) {
+                            future.complete(result);
+                        } else {
+                            future.completeExceptionally(status == 2 ? new TimeoutException("Submission did not finish before its deadline") : new RuntimeException("Process failed"));
                         }
                     }
                 }
@@ -309,12 +1098,34 @@ public void close() {
         }
         if (process != null) {
             try {
+                if (classDataSharing != null && classDataSharing.isRecording()) {
+                    // The daemon exits by itself once shut down, and must not be stopped while writing its archive
+                    process.waitFor(30, TimeUnit.SECONDS);
+                }
                 process.destroy();
                 process.waitFor();
             } catch (Throwable t) {
                 suppressed.add(t);
             }
         }
+        if (classDataSharing != null) {
+            try {
+                classDataSharing.finish();
+            } catch (Throwable t) {
+                suppressed.add(t);
+            }
+        }
+        if (sharedMemory != null) {
+            try {
+                sharedMemory.close();
+            } catch (Throwable t) {
+                suppressed.add(t);
+            }
+        }
+        Throwable outputFailure;
+        while ((outputFailure = outputFailures.poll()) != null) {
+            suppressed.add(outputFailure);
+        }
         if (!suppressed.isEmpty()) {
             var exception = new IOException("Failed to close resources");
             suppressed.forEach(exception::addSuppressed);
@@ -322,22 +1133,364 @@ public void close() {
         }
     }
 
+    /**
+     * {@return counts and timings of the submissions made through this executor}
+     */
+    public ForkedTaskExecutorMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * {@return the daemon's resource usage as of its latest heartbeat, or {@code null} if it has not sent one} Daemons
+     * only send heartbeats if {@link ForkedTaskExecutorSpec#heartbeatInterval()} is set.
+     */
+    public @Nullable ForkedTaskExecutorHealth health() {
+        return listener.health;
+    }
+
+    // Whether the child process is still able to accept submissions
+    boolean isAlive() {
+        return process.isAlive() && !listener.closed.get();
+    }
+
+    // Slots in the ring of pending results; a submission whose slot is still taken is tracked in a map instead
+    private static final int PENDING_CAPACITY = 1024;
+
     private final AtomicInteger id = new AtomicInteger();
 
+    private int nextId() {
+        // Negative ids are reserved for control frames
+        return id.getAndIncrement() & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Submits an input without waiting for its result. Cancelling the returned future stops the task in the daemon,
+     * interrupting it if it has already started, and any result it still produces is dropped. The input is copied
+     * before it is queued to be sent, so the array may be reused once this returns; {@link #submitAsync(ByteBuffer)}
+     * avoids the copy.
+     */
     public Future<byte[]> submitAsync(byte[] input) {
-        var nextId = id.getAndIncrement();
+        return submitCompletable(0, input, -1, Priority.NORMAL);
+    }
+
+    /**
+     * Submits the remaining bytes of a buffer, which may be direct, without copying them into an array, unless a result
+     * cache or deduplication is configured. The buffer's position is not moved, and its contents must not be modified
+     * until the returned future completes. Otherwise behaves as for {@link #submitAsync(byte[])}.
+     */
+    public Future<byte[]> submitAsync(ByteBuffer input) {
+        return submitCompletable(0, input);
+    }
+
+    CompletableFuture<byte[]> submitCompletable(int task, ByteBuffer input) {
+        if (resultCache != null || singleFlight != null) {
+            byte[] bytes = new byte[input.remaining()];
+            input.duplicate().get(bytes);
+            return submitCompletable(task, bytes, -1, Priority.NORMAL);
+        }
+        return submitUncached(task, input.slice(), -1, Priority.NORMAL);
+    }
+
+    /**
+     * Submits an input with a deadline, enforced by the daemon: a submission still queued when the timeout elapses
+     * never starts, and a running task is interrupted. Either way, the returned future fails with a
+     * {@link TimeoutException}. Cancelling the returned future behaves as for {@link #submitAsync(byte[])}.
+     */
+    public Future<byte[]> submitAsync(byte[] input, Duration timeout) {
+        return submitCompletable(0, input, Math.max(0, timeout.toNanos()), Priority.NORMAL);
+    }
+
+    /**
+     * Submits an input that the daemon starts ahead of any waiting submissions of lower priority.
+     */
+    public Future<byte[]> submitAsync(byte[] input, Priority priority) {
+        return submitCompletable(0, input, -1, priority);
+    }
+
+    /**
+     * Submits an input with both a deadline, as for {@link #submitAsync(byte[], Duration)}, and a priority, as for
+     * {@link #submitAsync(byte[], Priority)}.
+     */
+    public Future<byte[]> submitAsync(byte[] input, Duration timeout, Priority priority) {
+        return submitCompletable(0, input, Math.max(0, timeout.toNanos()), priority);
+    }
+
+    // Most submissions sent in one batch frame, and the largest input that is sent as part of one
+    private static final int BATCH_SIZE = 256;
+    private static final int BATCH_INPUT_LIMIT = 16 * 1024;
+
+    /**
+     * Submits several inputs at once, as for {@link #submitAsync(byte[])}. Small inputs are sent to the daemon
+     * together in a single frame, saving the overhead of sending many tiny submissions one by one. The returned
+     * futures are in the order of the inputs; each may be cancelled on its own.
+     */
+    public List<Future<byte[]>> submitAll(List<byte[]> inputs) {
+        return submitAll(0, inputs);
+    }
+
+    private List<Future<byte[]>> submitAll(int task, List<byte[]> inputs) {
+        List<Future<byte[]>> outs = new ArrayList<>(inputs.size());
+        if (concurrencyLimit != null || resultCache != null || singleFlight != null) {
+            // Each input must pass through the limit, cache and grouping on its own
+            for (var input : inputs) {
+                outs.add(submitCompletable(task, input, -1, Priority.NORMAL));
+            }
+            return outs;
+        }
+        List<byte[]> batch = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            var input = inputs.get(i);
+            if (input.length > BATCH_INPUT_LIMIT || (sharedMemory != null && sharedMemory.shouldShare(input.length))) {
+                // Large inputs gain nothing from sharing a frame, and would only be copied into it; they are still copied
+                // once, as they are read after this returns
+                outs.add(send(task, ByteBuffer.wrap(input.clone()), -1, Priority.NORMAL));
+            } else {
+                outs.add(null);
+                batch.add(input);
+                positions.add(i);
+            }
+        }
+        for (int start = 0; start < batch.size(); start += BATCH_SIZE) {
+            var inputsInFrame = batch.subList(start, Math.min(batch.size(), start + BATCH_SIZE));
+            int[] ids = new int[inputsInFrame.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = nextId();
+            }
+            List<CompletableFuture<byte[]>> sent;
+            try {
+                sent = listener.submitAll(ids, task, inputsInFrame);
+            } catch (IOException e) {
+                sent = new ArrayList<>(ids.length);
+                for (int i = 0; i < ids.length; i++) {
+                    sent.add(CompletableFuture.failedFuture(e));
+                }
+            }
+            for (int i = 0; i < ids.length; i++) {
+                outs.set(positions.get(start + i), sent.get(i));
+            }
+        }
+        return outs;
+    }
+
+    /**
+     * {@return a handle that sends submissions to one of the daemon's task classes} The class must be the spec's
+     * {@linkplain ForkedTaskExecutorSpec#taskClass() main task class}, or one of its
+     * {@linkplain ForkedTaskExecutorSpec#additionalTaskClasses() additional task classes}. Submissions through any
+     * handle share this executor's daemon, connection, limits and metrics.
+     */
+    public TaskHandle task(String taskClass) {
+        int task = taskClasses.indexOf(taskClass);
+        if (task < 0) {
+            throw new IllegalArgumentException("Task class " + taskClass + " is not run by this executor, which runs " + taskClasses);
+        }
+        return new TaskHandle(task, taskClass);
+    }
+
+    /**
+     * Submits inputs to one task class of a daemon that runs several; see {@link #task(String)}. Each method behaves as
+     * the executor's method of the same signature does.
+     */
+    public final class TaskHandle {
+        private final int task;
+        private final String taskClass;
+
+        private TaskHandle(int task, String taskClass) {
+            this.task = task;
+            this.taskClass = taskClass;
+        }
+
+        /**
+         * {@return the task class submissions are sent to}
+         */
+        public String taskClass() {
+            return taskClass;
+        }
+
+        public Future<byte[]> submitAsync(byte[] input) {
+            return submitCompletable(task, input, -1, Priority.NORMAL);
+        }
+
+        public Future<byte[]> submitAsync(byte[] input, Duration timeout) {
+            return submitCompletable(task, input, Math.max(0, timeout.toNanos()), Priority.NORMAL);
+        }
+
+        public Future<byte[]> submitAsync(byte[] input, Priority priority) {
+            return submitCompletable(task, input, -1, priority);
+        }
+
+        public Future<byte[]> submitAsync(byte[] input, Duration timeout, Priority priority) {
+            return submitCompletable(task, input, Math.max(0, timeout.toNanos()), priority);
+        }
+
+        public Future<byte[]> submitAsync(ByteBuffer input) {
+            return submitCompletable(task, input);
+        }
+
+        public List<Future<byte[]>> submitAll(List<byte[]> inputs) {
+            return ForkedTaskExecutor.this.submitAll(task, inputs);
+        }
+
+        public InputStream submitStream(InputStream input) {
+            var nextId = nextId();
+            return ForkedTaskExecutor.this.submitStream(nextId, task, new InputStreamSender(nextId, input, listener.socketHandle));
+        }
+
+        public InputStream submitStream(Flow.Publisher<ByteBuffer> input) {
+            var nextId = nextId();
+            return ForkedTaskExecutor.this.submitStream(nextId, task, new PublisherSender(nextId, input, listener.socketHandle));
+        }
+
+        public byte[] submit(byte[] input) {
+            try {
+                return submitCompletable(task, input, -1, Priority.NORMAL).get();
+            } catch (ExecutionException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * The order in which the daemon starts submissions waiting for a thread; see
+     * {@link ForkedTaskExecutorSpec.Scheduler}. Submissions of the same priority start in the order they were sent.
+     */
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    // A negative timeout means the submission has no deadline; the task is an index into the spec's task classes
+    CompletableFuture<byte[]> submitCompletable(int task, byte[] input, long timeoutNanos, Priority priority) {
+        var resultCache = this.resultCache;
+        if (resultCache != null) {
+            return resultCache.get(task, input, metrics::cacheHit, () -> submitShared(task, input, timeoutNanos, priority));
+        }
+        return submitShared(task, input, timeoutNanos, priority);
+    }
+
+    private CompletableFuture<byte[]> submitShared(int task, byte[] input, long timeoutNanos, Priority priority) {
+        // The writer thread reads the input after this returns, and grouping keeps it for as long as it is in flight,
+        // but callers may reuse their array as soon as they have submitted it
+        byte[] owned = input.clone();
+        var singleFlight = this.singleFlight;
+        if (singleFlight != null && timeoutNanos < 0) {
+            return singleFlight.submit(task, owned, metrics::deduplicate, () -> submitUncached(task, ByteBuffer.wrap(owned), timeoutNanos, priority));
+        }
+        return submitUncached(task, ByteBuffer.wrap(owned), timeoutNanos, priority);
+    }
+
+    // The input is sent once, so its position is moved as it is written
+    private CompletableFuture<byte[]> submitUncached(int task, ByteBuffer input, long timeoutNanos, Priority priority) {
+        var concurrencyLimit = this.concurrencyLimit;
+        if (concurrencyLimit == null) {
+            return send(task, input, timeoutNanos, priority);
+        }
+        switch (admission) {
+            case FAIL:
+                if (!concurrencyLimit.tryAcquire()) {
+                    metrics.rejected();
+                    return CompletableFuture.failedFuture(new RejectedExecutionException("Too many submissions in flight"));
+                }
+                return sendLimited(concurrencyLimit, task, input, timeoutNanos, priority);
+            case QUEUE:
+                return sendQueued(concurrencyLimit, task, input, timeoutNanos, priority);
+            default:
+                if (Thread.currentThread() == listener.thread) {
+                    // Submitted from a callback on the thread reading results, which, if it waited here, would never
+                    // read the result that frees a place; so it is queued instead
+                    return sendQueued(concurrencyLimit, task, input, timeoutNanos, priority);
+                }
+                try {
+                    concurrencyLimit.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+                return sendLimited(concurrencyLimit, task, input, timeoutNanos, priority);
+        }
+    }
+
+    private CompletableFuture<byte[]> sendQueued(ConcurrencyLimit concurrencyLimit, int task, ByteBuffer input, long timeoutNanos, Priority priority) {
+        var out = new CompletableFuture<byte[]>();
+        long queued = System.nanoTime();
+        concurrencyLimit.acquireLater(() -> {
+            if (out.isDone()) {
+                // Cancelled while waiting, so it is never sent
+                concurrencyLimit.release(-1, false);
+                return;
+            }
+            long remaining = timeoutNanos < 0 ? -1 : Math.max(0, timeoutNanos - (System.nanoTime() - queued));
+            var sent = sendLimited(concurrencyLimit, task, input, remaining, priority);
+            sent.whenComplete((result, t) -> {
+                if (t == null) {
+                    out.complete(result);
+                } else {
+                    out.completeExceptionally(t);
+                }
+            });
+            out.whenComplete((result, t) -> {
+                if (out.isCancelled()) {
+                    sent.cancel(true);
+                }
+            });
+        });
+        return out;
+    }
+
+    // The submission must already hold a place under the limit, which is given back once it completes
+    private CompletableFuture<byte[]> sendLimited(ConcurrencyLimit concurrencyLimit, int task, ByteBuffer input, long timeoutNanos, Priority priority) {
+        long start = System.nanoTime();
+        var out = send(task, input, timeoutNanos, priority);
+        out.whenComplete((result, t) -> concurrencyLimit.release(
+            t == null ? System.nanoTime() - start : -1,
+            t instanceof TimeoutException
+        ));
+        return out;
+    }
+
+    private CompletableFuture<byte[]> send(int task, ByteBuffer input, long timeoutNanos, Priority priority) {
+        var nextId = nextId();
         try {
-            return listener.submit(nextId, input);
+            return listener.submit(nextId, task, input, timeoutNanos, priority);
         } catch (IOException e) {
             return CompletableFuture.failedFuture(e);
         }
     }
 
+    /**
+     * Submits an input that is streamed to the daemon as it is read, and returns a stream of the result as the daemon
+     * produces it; the task receives it through {@code Task.run(InputStream, OutputStream)}. The input is read, and
+     * closed once exhausted, on a separate thread. Reading the result fails with an {@link IOException} if the task
+     * fails.
+     */
+    public InputStream submitStream(InputStream input) {
+        var nextId = nextId();
+        return submitStream(nextId, 0, new InputStreamSender(nextId, input, listener.socketHandle));
+    }
+
+    /**
+     * Submits an input that is streamed to the daemon as it is published, and returns a stream of the result as the
+     * daemon produces it. Published buffers are sent in chunks, however large they are, and must not be modified once
+     * published; each buffer is only requested once the daemon has read enough of the previous ones.
+     */
+    public InputStream submitStream(Flow.Publisher<ByteBuffer> input) {
+        var nextId = nextId();
+        return submitStream(nextId, 0, new PublisherSender(nextId, input, listener.socketHandle));
+    }
+
+    private InputStream submitStream(int id, int task, StreamedInput input) {
+        try {
+            return listener.submitStream(id, task, input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public byte[] submit(byte[] input) {
-        var nextId = id.getAndIncrement();
         try {
-            return listener.submit(nextId, input).get();
-        } catch (IOException | ExecutionException | InterruptedException e) {
+            return submitCompletable(0, input, -1, Priority.NORMAL).get();
+        } catch (ExecutionException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
@@ -0,0 +1,131 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * A daemon's memory, garbage collection and thread usage, as sent in its latest heartbeat; see
+ * {@link ForkedTaskExecutorSpec#heartbeatInterval()}. Byte counts cover the daemon's heap only.
+ */
+public final class ForkedTaskExecutorHealth {
+    private final long receivedAt;
+    private final long uptimeMillis;
+    private final long heapUsed;
+    private final long heapRetained;
+    private final long heapMax;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final int threadCount;
+    private final int queueDepth;
+    private final int running;
+    private final double gcFraction;
+
+    ForkedTaskExecutorHealth(long uptimeMillis, long heapUsed, long heapRetained, long heapMax, long gcCount, long gcTimeMillis, int threadCount, int queueDepth, int running, @Nullable ForkedTaskExecutorHealth previous) {
+        this.receivedAt = System.nanoTime();
+        this.uptimeMillis = uptimeMillis;
+        this.heapUsed = heapUsed;
+        this.heapRetained = heapRetained;
+        this.heapMax = heapMax;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.threadCount = threadCount;
+        this.queueDepth = queueDepth;
+        this.running = running;
+        // Measured on the daemon's clock, so that delays in delivering heartbeats do not skew it
+        long elapsed = previous == null ? uptimeMillis : uptimeMillis - previous.uptimeMillis;
+        long collecting = previous == null ? gcTimeMillis : gcTimeMillis - previous.gcTimeMillis;
+        this.gcFraction = elapsed <= 0 ? 0 : Math.min(1, Math.max(0, (double) collecting / elapsed));
+    }
+
+    /**
+     * {@return how long ago this heartbeat arrived}
+     */
+    public Duration age() {
+        return Duration.ofNanos(System.nanoTime() - receivedAt);
+    }
+
+    /**
+     * {@return how long the daemon's JVM had been running when it sent this heartbeat}
+     */
+    public Duration uptime() {
+        return Duration.ofMillis(uptimeMillis);
+    }
+
+    /**
+     * {@return the bytes of heap in use, including garbage not yet collected}
+     */
+    public long heapUsed() {
+        return heapUsed;
+    }
+
+    /**
+     * {@return the bytes of heap still in use after the latest garbage collection, or {@code -1} if there has been none
+     * or the daemon's JVM does not report it} This is a better measure than {@link #heapUsed()} of how close the daemon
+     * is to running out of memory.
+     */
+    public long heapRetained() {
+        return heapRetained;
+    }
+
+    /**
+     * {@return the most bytes of heap the daemon may use, or {@code -1} if there is no limit}
+     */
+    public long heapMax() {
+        return heapMax;
+    }
+
+    /**
+     * {@return the fraction of the heap limit in use, by {@link #heapRetained()} where reported and otherwise by
+     * {@link #heapUsed()}, or {@code 0} if there is no limit}
+     */
+    public double heapFraction() {
+        if (heapMax <= 0) {
+            return 0;
+        }
+        return (double) (heapRetained >= 0 ? heapRetained : heapUsed) / heapMax;
+    }
+
+    /**
+     * {@return the number of garbage collections the daemon has run}
+     */
+    public long gcCount() {
+        return gcCount;
+    }
+
+    /**
+     * {@return the total time the daemon has spent in garbage collection}
+     */
+    public Duration gcTime() {
+        return Duration.ofMillis(gcTimeMillis);
+    }
+
+    /**
+     * {@return the fraction of time the daemon spent in garbage collection since its previous heartbeat, or since it
+     * started for its first}
+     */
+    public double gcFraction() {
+        return gcFraction;
+    }
+
+    /**
+     * {@return the number of live threads in the daemon}
+     */
+    public int threadCount() {
+        return threadCount;
+    }
+
+    /**
+     * {@return the number of submissions waiting for a thread in the daemon}
+     */
+    public int queueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * {@return the number of submissions the daemon had received and not yet finished}
+     */
+    public int running() {
+        return running;
+    }
+}
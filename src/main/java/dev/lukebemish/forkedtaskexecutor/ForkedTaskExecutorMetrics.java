@@ -0,0 +1,204 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and timings of the submissions made through one {@link ForkedTaskExecutor}. The round trip of each answered
+ * submission is split into the time it waited for a thread in the daemon, the time its task ran, and the rest, which
+ * is spent in transport and handling on either side. Streamed submissions only count towards the byte totals.
+ */
+public final class ForkedTaskExecutorMetrics {
+    public enum Outcome {
+        SUCCESS,
+        FAILURE,
+        /**
+         * The submission's deadline passed before it finished.
+         */
+        TIMEOUT,
+        /**
+         * The submission was cancelled after being sent; the daemon's answer is dropped.
+         */
+        CANCELLED,
+        /**
+         * The submission was refused because too many were in flight, and never sent.
+         */
+        REJECTED
+    }
+
+    /**
+     * Notified of each submission's outcome. It is called on the thread reading results, so should return quickly;
+     * anything it throws is ignored.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Times are in nanoseconds, and are {@code -1} for submissions the daemon never answered: those rejected, and
+         * those failed or cancelled when the executor stopped.
+         */
+        void onResult(Outcome outcome, long roundTripNanos, long queueNanos, long runNanos);
+    }
+
+    private final @Nullable Listener listener;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final LatencyHistogram queueTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final LatencyHistogram transportTime = new LatencyHistogram();
+    private volatile int daemonQueueDepth;
+
+    ForkedTaskExecutorMetrics(@Nullable Listener listener) {
+        this.listener = listener;
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    void submit() {
+        submitted.increment();
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    void deduplicate() {
+        deduplicated.increment();
+    }
+
+    void sent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    void received(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    void rejected() {
+        unanswered(Outcome.REJECTED);
+    }
+
+    // A submission that ended without an answer from the daemon, so has no timings
+    void unanswered(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+        notify(outcome, -1, -1, -1);
+    }
+
+    void answered(Outcome outcome, long roundTripNanos, long queueNanos, long runNanos, int daemonQueueDepth) {
+        outcomes[outcome.ordinal()].increment();
+        this.daemonQueueDepth = daemonQueueDepth;
+        roundTrip.record(roundTripNanos);
+        queueTime.record(queueNanos);
+        runTime.record(runNanos);
+        transportTime.record(roundTripNanos - queueNanos - runNanos);
+        notify(outcome, roundTripNanos, queueNanos, runNanos);
+    }
+
+    private void notify(Outcome outcome, long roundTripNanos, long queueNanos, long runNanos) {
+        var listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.onResult(outcome, roundTripNanos, queueNanos, runNanos);
+            } catch (RuntimeException e) {
+                // A failing listener must not stop results from being read
+            }
+        }
+    }
+
+    /**
+     * {@return the number of submissions sent to the daemon}
+     */
+    public long submitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * {@return the number of submissions answered from the result cache, which are not otherwise counted}
+     */
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * {@return the number of submissions that waited for an identical one already in flight, which are not otherwise
+     * counted}
+     */
+    public long deduplicated() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * {@return the number of submissions that ended with the given outcome}
+     */
+    public long count(Outcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    /**
+     * {@return the number of submissions sent to the daemon that it has not yet answered}
+     */
+    public long inFlight() {
+        long answered = 0;
+        for (var outcome : Outcome.values()) {
+            if (outcome != Outcome.REJECTED) {
+                answered += count(outcome);
+            }
+        }
+        return submitted() - answered;
+    }
+
+    /**
+     * {@return the number of submissions waiting for a thread in the daemon, as of its latest answer}
+     */
+    public int daemonQueueDepth() {
+        return daemonQueueDepth;
+    }
+
+    /**
+     * {@return the number of bytes written to the daemon, including framing}
+     */
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * {@return the number of bytes read from the daemon, including framing}
+     */
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * {@return the time from sending each submission to reading its answer}
+     */
+    public LatencyHistogram roundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * {@return the time each submission waited for a thread in the daemon}
+     */
+    public LatencyHistogram queueTime() {
+        return queueTime;
+    }
+
+    /**
+     * {@return the time each submission's task ran in the daemon}
+     */
+    public LatencyHistogram runTime() {
+        return runTime;
+    }
+
+    /**
+     * {@return the part of each round trip spent neither queued nor running in the daemon}
+     */
+    public LatencyHistogram transportTime() {
+        return transportTime;
+    }
+}
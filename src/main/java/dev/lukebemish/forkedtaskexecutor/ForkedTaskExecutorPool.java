@@ -0,0 +1,527 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spreads submissions across several child processes started from the same {@link ForkedTaskExecutorSpec}. Each
+ * submission is sent to the child with the fewest in-flight submissions; children are started when every child is
+ * at the growth threshold, and stopped again once they have been idle for the idle timeout, within the configured
+ * size bounds. A child that asks to restart, reaches the task or age limit, or whose heartbeats report memory or
+ * garbage collection above the recycle thresholds, keeps receiving submissions while its successor starts, and is then
+ * drained and stopped.
+ * <p>
+ * Submissions made with a key are instead always sent to the same child for that key, so that state the child builds
+ * up for the key stays in one place. Keys are spread over children by rendezvous hashing: starting or stopping a child
+ * only moves the keys that belong to that child, and a child's successor takes over exactly the keys it had.
+ */
+public final class ForkedTaskExecutorPool implements AutoCloseable {
+    private final ForkedTaskExecutorPoolSpec spec;
+    // Children that may be routed to; retiring children are removed from here but stay in live until closed
+    private final List<Child> children = new CopyOnWriteArrayList<>();
+    private final Set<Child> live = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService maintenance;
+    // Shared by all children, so that a result computed by one answers the same input sent to any other, and identical
+    // submissions are grouped whichever child they would have been sent to
+    private final @Nullable ResultCache resultCache;
+    private final @Nullable SingleFlight singleFlight;
+    // Submissions answered or grouped by the pool never reach a child, so are not in any child's metrics
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final AtomicBoolean growing = new AtomicBoolean();
+    // Completes once the maintenance thread has started a child for submissions that found none to send to
+    private final AtomicReference<@Nullable CompletableFuture<Void>> restarting = new AtomicReference<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // Failures on the maintenance thread are re-thrown on close
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    public ForkedTaskExecutorPool(ForkedTaskExecutorPoolSpec spec) {
+        this.spec = spec;
+        this.resultCache = ResultCache.create(spec.executorSpec());
+        this.singleFlight = spec.executorSpec().deduplicate() ? new SingleFlight() : null;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "ForkedTaskExecutorPool maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < spec.minSize(); i++) {
+                addChild();
+            }
+        } catch (RuntimeException e) {
+            try {
+                close();
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        long period = Math.max(10, Math.min(1000, spec.idleTimeout().toMillis()));
+        maintenance.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private final class Child {
+        // Decides which keys the child is sent; a successor keeps its predecessor's seed, and so its keys
+        private final long seed;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean closing = new AtomicBoolean();
+        private final AtomicBoolean replacing = new AtomicBoolean();
+        private final AtomicInteger submitted = new AtomicInteger();
+        private final long startedAt;
+        private volatile long lastActive;
+        private volatile boolean retiring;
+        // Only null while the child process is starting; a shutdown request may arrive before the constructor returns
+        private volatile @Nullable ForkedTaskExecutor executor;
+
+        private Child(long seed) {
+            this.seed = seed;
+            var onShutdownRequest = spec.executorSpec().onShutdownRequest();
+            this.executor = new ForkedTaskExecutor(spec.executorSpec(), () -> {
+                // The child wants to restart itself; it is closed once its successor has started and it has drained
+                replace(this);
+                if (onShutdownRequest != null) {
+                    onShutdownRequest.run();
+                }
+            }, false, null, null);
+            // Startup time does not count towards the idle timeout
+            this.lastActive = System.nanoTime();
+            this.startedAt = lastActive;
+            if (retiring) {
+                closeWhenDrained(this);
+            }
+        }
+
+        private boolean tryAcquire() {
+            inFlight.incrementAndGet();
+            if (retiring) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        private void release() {
+            lastActive = System.nanoTime();
+            if (inFlight.decrementAndGet() == 0 && retiring) {
+                closeWhenDrained(this);
+            }
+        }
+
+        // Whether the child's latest heartbeat shows it too close to running out of memory to take more submissions
+        private boolean heldBack() {
+            var executor = this.executor;
+            var health = executor == null ? null : executor.health();
+            return health != null && spec.heapHoldBackThreshold() != -1 && health.heapFraction() > spec.heapHoldBackThreshold();
+        }
+
+        private boolean overRecycleThreshold() {
+            var executor = this.executor;
+            var health = executor == null ? null : executor.health();
+            if (health == null) {
+                return false;
+            }
+            return (spec.heapRecycleThreshold() != -1 && health.heapFraction() > spec.heapRecycleThreshold())
+                || (spec.gcRecycleThreshold() != -1 && health.gcFraction() > spec.gcRecycleThreshold());
+        }
+
+        private void close() {
+            try {
+                var executor = this.executor;
+                if (executor != null) {
+                    executor.close();
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            } finally {
+                live.remove(this);
+            }
+        }
+    }
+
+    private void addChild() {
+        addChild(ThreadLocalRandom.current().nextLong());
+    }
+
+    // Starts a child and routes submissions to it, unless the pool was closed while it was starting, in which case the
+    // child is closed again; that is no failure, as the pool no longer needs it
+    private void addChild(long seed) {
+        var child = new Child(seed);
+        live.add(child);
+        if (closed.get()) {
+            child.closing.set(true);
+            child.close();
+            return;
+        }
+        children.add(child);
+    }
+
+    private void retire(Child child) {
+        child.retiring = true;
+        children.remove(child);
+        closeWhenDrained(child);
+    }
+
+    // Starts a successor for the child, and only stops routing to the child once the successor is taking submissions
+    private void replace(Child child) {
+        if (child.retiring || !child.replacing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenance.execute(() -> {
+                try {
+                    if (!closed.get()) {
+                        addChild(child.seed);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    retire(child);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool is closing, and will close this child itself
+        }
+    }
+
+    private void closeWhenDrained(Child child) {
+        if (child.inFlight.get() != 0 || child.executor == null) {
+            return;
+        }
+        if (child.closing.compareAndSet(false, true)) {
+            // Closing joins the child's listener thread, which may be the current thread, so it happens elsewhere
+            try {
+                maintenance.execute(child::close);
+            } catch (RejectedExecutionException e) {
+                // The pool is closing, and will close this child itself
+                child.closing.set(false);
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            for (var child : children) {
+                var executor = child.executor;
+                if (executor != null && !executor.isAlive()) {
+                    retire(child);
+                }
+            }
+            long idleNanos = spec.idleTimeout().toNanos();
+            long now = System.nanoTime();
+            for (var child : children) {
+                if (child.overRecycleThreshold()) {
+                    replace(child);
+                }
+            }
+            var maxChildAge = spec.maxChildAge();
+            if (maxChildAge != null) {
+                for (var child : children) {
+                    if (now - child.startedAt >= maxChildAge.toNanos()) {
+                        replace(child);
+                    }
+                }
+            }
+            for (var child : children) {
+                if (children.size() <= spec.minSize()) {
+                    break;
+                }
+                if (child.inFlight.get() == 0 && !child.replacing.get() && now - child.lastActive >= idleNanos) {
+                    retire(child);
+                }
+            }
+            while (!closed.get() && children.size() < spec.minSize()) {
+                addChild();
+            }
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+    }
+
+    private void grow() {
+        if (children.size() >= spec.maxSize() || !growing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenance.execute(() -> {
+                try {
+                    if (!closed.get() && children.size() < spec.maxSize()) {
+                        addChild();
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    growing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            growing.set(false);
+        }
+    }
+
+    // Without a key, picks the least loaded child; with one, the child whose seed scores highest for the key. Returns
+    // null if there is no child to pick
+    private @Nullable Child acquire(@Nullable Object key) {
+        while (true) {
+            if (closed.get()) {
+                throw new UncheckedIOException(new IOException("Pool is closed"));
+            }
+            Child best = null;
+            int bestLoad = Integer.MAX_VALUE;
+            boolean bestHeldBack = true;
+            long bestScore = 0;
+            int keyHash = key == null ? 0 : key.hashCode();
+            for (var child : children) {
+                if (child.retiring) {
+                    continue;
+                }
+                if (key != null) {
+                    // While a child is being replaced, its successor has the same score, and the earlier of the two,
+                    // which still has the key's state, is kept until it retires
+                    long score = score(keyHash, child.seed);
+                    if (best == null || score > bestScore) {
+                        best = child;
+                        bestScore = score;
+                    }
+                    continue;
+                }
+                // Children under memory pressure are only chosen if every child is
+                int load = child.inFlight.get();
+                boolean heldBack = child.heldBack();
+                if (best == null || (bestHeldBack && !heldBack) || (heldBack == bestHeldBack && load < bestLoad)) {
+                    best = child;
+                    bestLoad = load;
+                    bestHeldBack = heldBack;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            if (best.tryAcquire()) {
+                // Keyed submissions never start children, which would move keys to them
+                if (key == null && (bestHeldBack || best.inFlight.get() >= spec.growthThreshold())) {
+                    grow();
+                }
+                if (spec.maxTasksPerChild() > 0 && best.submitted.incrementAndGet() == spec.maxTasksPerChild()) {
+                    replace(best);
+                }
+                return best;
+            }
+        }
+    }
+
+    // Starts a child on the maintenance thread, if every child has retired or died since the last maintenance pass;
+    // submissions made meanwhile share the one attempt, and fail if it does
+    private CompletableFuture<Void> restart() {
+        while (true) {
+            var existing = restarting.get();
+            if (existing != null) {
+                return existing;
+            }
+            var started = new CompletableFuture<Void>();
+            if (!restarting.compareAndSet(null, started)) {
+                continue;
+            }
+            try {
+                maintenance.execute(() -> {
+                    // Cleared first, so that submissions failed by this attempt make a new one if they retry
+                    restarting.set(null);
+                    try {
+                        if (!closed.get() && children.stream().allMatch(child -> child.retiring)) {
+                            addChild();
+                        }
+                        started.complete(null);
+                    } catch (Throwable t) {
+                        started.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                restarting.set(null);
+                started.completeExceptionally(new IOException("Pool is closed"));
+            }
+            return started;
+        }
+    }
+
+    // Mixes a key's hash with a child's seed, as the finalizer of MurmurHash3 does
+    private static long score(int keyHash, long seed) {
+        long h = seed ^ (keyHash * 0x9E3779B97F4A7C15L);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    public Future<byte[]> submitAsync(byte[] input) {
+        return submitAsync(null, input, -1, ForkedTaskExecutor.Priority.NORMAL);
+    }
+
+    /**
+     * Submits an input to the child the key belongs to, which is the same for every submission with an equal key for as
+     * long as that child runs; its successor, if it is replaced, is given the same keys. Keys are told apart by
+     * {@link Object#hashCode()} alone, so must have a hash code based on their contents; arrays do not. Keyed
+     * submissions do not cause the pool to grow.
+     */
+    public Future<byte[]> submitAsync(Object key, byte[] input) {
+        return submitAsync(key, input, -1, ForkedTaskExecutor.Priority.NORMAL);
+    }
+
+    /**
+     * Submits an input with a deadline enforced by the child it is sent to; see
+     * {@link ForkedTaskExecutor#submitAsync(byte[], Duration)}.
+     */
+    public Future<byte[]> submitAsync(byte[] input, Duration timeout) {
+        return submitAsync(null, input, Math.max(0, timeout.toNanos()), ForkedTaskExecutor.Priority.NORMAL);
+    }
+
+    /**
+     * Submits an input that the child it is sent to starts ahead of waiting submissions of lower priority; see
+     * {@link ForkedTaskExecutor#submitAsync(byte[], ForkedTaskExecutor.Priority)}.
+     */
+    public Future<byte[]> submitAsync(byte[] input, ForkedTaskExecutor.Priority priority) {
+        return submitAsync(null, input, -1, priority);
+    }
+
+    private Future<byte[]> submitAsync(@Nullable Object key, byte[] input, long timeoutNanos, ForkedTaskExecutor.Priority priority) {
+        var resultCache = this.resultCache;
+        if (resultCache != null) {
+            return resultCache.get(0, input, cacheHits::increment, () -> submitShared(key, input, timeoutNanos, priority));
+        }
+        return submitShared(key, input, timeoutNanos, priority);
+    }
+
+    private CompletableFuture<byte[]> submitShared(@Nullable Object key, byte[] input, long timeoutNanos, ForkedTaskExecutor.Priority priority) {
+        var singleFlight = this.singleFlight;
+        if (singleFlight != null && timeoutNanos < 0) {
+            // Grouping keeps the input for as long as it is in flight, but callers may reuse their array as soon as
+            // they have submitted it
+            byte[] owned = input.clone();
+            return singleFlight.submit(0, owned, deduplicated::increment, () -> submitUncached(key, owned, timeoutNanos, priority));
+        }
+        return submitUncached(key, input, timeoutNanos, priority);
+    }
+
+    private CompletableFuture<byte[]> submitUncached(@Nullable Object key, byte[] input, long timeoutNanos, ForkedTaskExecutor.Priority priority) {
+        Child child;
+        try {
+            child = acquire(key);
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+        }
+        if (child == null) {
+            // Starting a child takes as long as its startup, so is left to the maintenance thread rather than making the
+            // caller wait; the submission is sent once it is up, off that thread in case sending blocks
+            var out = new CompletableFuture<byte[]>();
+            restart().whenCompleteAsync((ignored, t) -> {
+                if (t != null) {
+                    out.completeExceptionally(t);
+                    return;
+                }
+                if (out.isDone()) {
+                    // Cancelled while waiting, so it is never sent
+                    return;
+                }
+                var sent = submitUncached(key, input, timeoutNanos, priority);
+                sent.whenComplete((result, failure) -> {
+                    if (failure == null) {
+                        out.complete(result);
+                    } else {
+                        out.completeExceptionally(failure);
+                    }
+                });
+                out.whenComplete((result, failure) -> {
+                    if (out.isCancelled()) {
+                        sent.cancel(true);
+                    }
+                });
+            });
+            return out;
+        }
+        var future = child.executor.submitCompletable(0, input, timeoutNanos, priority);
+        future.whenComplete((result, t) -> child.release());
+        return future;
+    }
+
+    public byte[] submit(byte[] input) {
+        try {
+            return submitAsync(input).get();
+        } catch (ExecutionException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * {@return the number of children currently accepting submissions}
+     */
+    public int size() {
+        return children.size();
+    }
+
+    /**
+     * {@return the number of submissions answered from the pool's result cache, which no child saw}
+     */
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * {@return the number of submissions that waited for an identical one already in flight in the pool, which no child
+     * saw}
+     */
+    public long deduplicated() {
+        return deduplicated.sum();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        List<Throwable> suppressed = new ArrayList<>();
+        // Let any in-progress child start or close finish, so that every child is visible in live
+        maintenance.shutdown();
+        try {
+            if (!maintenance.awaitTermination(30, TimeUnit.SECONDS)) {
+                maintenance.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            suppressed.add(e);
+        }
+        children.clear();
+        for (var child : live) {
+            if (child.closing.compareAndSet(false, true)) {
+                child.close();
+            }
+        }
+        Throwable failure;
+        while ((failure = failures.poll()) != null) {
+            suppressed.add(failure);
+        }
+        if (!suppressed.isEmpty()) {
+            var exception = new IOException("Failed to close resources");
+            suppressed.forEach(exception::addSuppressed);
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public final class ForkedTaskExecutorPoolSpec {
+    private final ForkedTaskExecutorSpec executorSpec;
+    private final int minSize;
+    private final int maxSize;
+    private final int growthThreshold;
+    private final Duration idleTimeout;
+    private final int maxTasksPerChild;
+    private final @Nullable Duration maxChildAge;
+    private final double heapHoldBackThreshold;
+    private final double heapRecycleThreshold;
+    private final double gcRecycleThreshold;
+
+    private ForkedTaskExecutorPoolSpec(ForkedTaskExecutorSpec executorSpec, int minSize, int maxSize, int growthThreshold, Duration idleTimeout, int maxTasksPerChild, @Nullable Duration maxChildAge, double heapHoldBackThreshold, double heapRecycleThreshold, double gcRecycleThreshold) {
+        this.executorSpec = executorSpec;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.growthThreshold = growthThreshold;
+        this.idleTimeout = idleTimeout;
+        this.maxTasksPerChild = maxTasksPerChild;
+        this.maxChildAge = maxChildAge;
+        this.heapHoldBackThreshold = heapHoldBackThreshold;
+        this.heapRecycleThreshold = heapRecycleThreshold;
+        this.gcRecycleThreshold = gcRecycleThreshold;
+    }
+
+    public ForkedTaskExecutorSpec executorSpec() {
+        return executorSpec;
+    }
+
+    public int minSize() {
+        return minSize;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * {@return the number of in-flight submissions the least loaded child must have before another child is started}
+     */
+    public int growthThreshold() {
+        return growthThreshold;
+    }
+
+    /**
+     * {@return how long a child above the minimum pool size may sit without in-flight submissions before it is stopped}
+     */
+    public Duration idleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * {@return the number of submissions after which a child is replaced, or {@code -1} if children are not replaced
+     * after any number}
+     */
+    public int maxTasksPerChild() {
+        return maxTasksPerChild;
+    }
+
+    /**
+     * {@return how long a child may run before it is replaced, or {@code null} if children are not replaced by age}
+     */
+    public @Nullable Duration maxChildAge() {
+        return maxChildAge;
+    }
+
+    /**
+     * {@return the {@linkplain ForkedTaskExecutorHealth#heapFraction() fraction of its heap} above which a child is
+     * sent no submissions while another child is below it, or {@code -1} if children are not held back} A child is
+     * started if every child is above it, within the maximum pool size.
+     */
+    public double heapHoldBackThreshold() {
+        return heapHoldBackThreshold;
+    }
+
+    /**
+     * {@return the {@linkplain ForkedTaskExecutorHealth#heapFraction() fraction of its heap} above which a child is
+     * replaced, or {@code -1} if children are not replaced by heap usage}
+     */
+    public double heapRecycleThreshold() {
+        return heapRecycleThreshold;
+    }
+
+    /**
+     * {@return the {@linkplain ForkedTaskExecutorHealth#gcFraction() fraction of time spent in garbage collection}
+     * between heartbeats above which a child is replaced, or {@code -1} if children are not replaced by garbage
+     * collection time}
+     */
+    public double gcRecycleThreshold() {
+        return gcRecycleThreshold;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private ForkedTaskExecutorSpec executorSpec;
+        private int minSize = 1;
+        private int maxSize = 1;
+        private int growthThreshold = Runtime.getRuntime().availableProcessors();
+        private Duration idleTimeout = Duration.ofSeconds(60);
+        private int maxTasksPerChild = -1;
+        private @Nullable Duration maxChildAge;
+        private double heapHoldBackThreshold = -1;
+        private double heapRecycleThreshold = -1;
+        private double gcRecycleThreshold = -1;
+
+        private Builder() {}
+
+        public Builder executorSpec(ForkedTaskExecutorSpec executorSpec) {
+            this.executorSpec = executorSpec;
+            return this;
+        }
+
+        public Builder minSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+
+        public Builder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Builder growthThreshold(int growthThreshold) {
+            this.growthThreshold = growthThreshold;
+            return this;
+        }
+
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder maxTasksPerChild(int maxTasksPerChild) {
+            this.maxTasksPerChild = maxTasksPerChild;
+            return this;
+        }
+
+        public Builder maxChildAge(Duration maxChildAge) {
+            this.maxChildAge = maxChildAge;
+            return this;
+        }
+
+        public Builder heapHoldBackThreshold(double heapHoldBackThreshold) {
+            this.heapHoldBackThreshold = heapHoldBackThreshold;
+            return this;
+        }
+
+        public Builder heapRecycleThreshold(double heapRecycleThreshold) {
+            this.heapRecycleThreshold = heapRecycleThreshold;
+            return this;
+        }
+
+        public Builder gcRecycleThreshold(double gcRecycleThreshold) {
+            this.gcRecycleThreshold = gcRecycleThreshold;
+            return this;
+        }
+
+        private static void checkFraction(String name, double threshold) {
+            if (threshold != -1 && !(threshold > 0 && threshold <= 1)) {
+                throw new IllegalArgumentException(name + " must be above 0 and at most 1, or -1 to disable it, got " + threshold);
+            }
+        }
+
+        public ForkedTaskExecutorPoolSpec build() {
+            Objects.requireNonNull(executorSpec, "executorSpec");
+            Objects.requireNonNull(idleTimeout, "idleTimeout");
+            if (minSize < 1 || maxSize < minSize) {
+                throw new IllegalArgumentException("Pool size bounds must satisfy 1 <= minSize <= maxSize, got " + minSize + " and " + maxSize);
+            }
+            if (growthThreshold < 1) {
+                throw new IllegalArgumentException("Growth threshold must be positive, got " + growthThreshold);
+            }
+            if (maxTasksPerChild < 1 && maxTasksPerChild != -1) {
+                throw new IllegalArgumentException("Task limit per child must be positive, or -1 for no limit, got " + maxTasksPerChild);
+            }
+            if (maxChildAge != null && (maxChildAge.isZero() || maxChildAge.isNegative())) {
+                throw new IllegalArgumentException("Maximum child age must be positive, got " + maxChildAge);
+            }
+            checkFraction("Heap hold-back threshold", heapHoldBackThreshold);
+            checkFraction("Heap recycle threshold", heapRecycleThreshold);
+            checkFraction("Garbage collection recycle threshold", gcRecycleThreshold);
+            if ((heapHoldBackThreshold != -1 || heapRecycleThreshold != -1 || gcRecycleThreshold != -1) && executorSpec.heartbeatInterval() == null) {
+                throw new IllegalArgumentException("Health thresholds require the executor spec to set a heartbeat interval");
+            }
+            return new ForkedTaskExecutorPoolSpec(executorSpec, minSize, maxSize, growthThreshold, idleTimeout, maxTasksPerChild, maxChildAge, heapHoldBackThreshold, heapRecycleThreshold, gcRecycleThreshold);
+        }
+    }
+}
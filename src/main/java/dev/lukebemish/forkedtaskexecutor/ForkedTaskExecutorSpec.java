@@ -2,7 +2,9 @@
 
 import org.jspecify.annotations.Nullable;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,14 +15,54 @@ public final class ForkedTaskExecutorSpec {
     private final boolean hideStacktrace;
     private final String taskClass;
     private final @Nullable Runnable onShutdownRequest;
+    private final Transport transport;
+    private final int sharedMemoryThreshold;
+    private final @Nullable Path sharedMemoryDirectory;
+    private final int maxInFlight;
+    private final Admission admission;
+    private final boolean adaptiveConcurrency;
+    private final Scheduler scheduler;
+    private final int parallelism;
+    private final ForkedTaskExecutorMetrics.@Nullable Listener metricsListener;
+    private final Duration startupTimeout;
+    private final @Nullable Path classDataSharingDirectory;
+    private final Output output;
+    private final @Nullable OutputSink outputSink;
+    private final boolean tagOutput;
+    private final long resultCacheSize;
+    private final @Nullable Path resultCacheDirectory;
+    private final long resultCacheDirectorySize;
+    private final boolean deduplicate;
+    private final @Nullable Duration heartbeatInterval;
+    private final List<String> additionalTaskClasses;
 
-    private ForkedTaskExecutorSpec(String javaExecutable, List<String> jvmOptions, List<String> programOptions, boolean hideStacktrace, String taskClass, @Nullable Runnable onShutdownRequest) {
+    private ForkedTaskExecutorSpec(String javaExecutable, List<String> jvmOptions, List<String> programOptions, boolean hideStacktrace, String taskClass, @Nullable Runnable onShutdownRequest, Transport transport, int sharedMemoryThreshold, @Nullable Path sharedMemoryDirectory, int maxInFlight, Admission admission, boolean adaptiveConcurrency, Scheduler scheduler, int parallelism, ForkedTaskExecutorMetrics.@Nullable Listener metricsListener, Duration startupTimeout, @Nullable Path classDataSharingDirectory, Output output, @Nullable OutputSink outputSink, boolean tagOutput, long resultCacheSize, @Nullable Path resultCacheDirectory, long resultCacheDirectorySize, boolean deduplicate, @Nullable Duration heartbeatInterval, List<String> additionalTaskClasses) {
         this.javaExecutable = javaExecutable;
         this.jvmOptions = List.copyOf(jvmOptions);
         this.programOptions = List.copyOf(programOptions);
         this.hideStacktrace = hideStacktrace;
         this.taskClass = taskClass;
         this.onShutdownRequest = onShutdownRequest;
+        this.transport = transport;
+        this.sharedMemoryThreshold = sharedMemoryThreshold;
+        this.sharedMemoryDirectory = sharedMemoryDirectory;
+        this.maxInFlight = maxInFlight;
+        this.admission = admission;
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        this.scheduler = scheduler;
+        this.parallelism = parallelism;
+        this.metricsListener = metricsListener;
+        this.startupTimeout = startupTimeout;
+        this.classDataSharingDirectory = classDataSharingDirectory;
+        this.output = output;
+        this.outputSink = outputSink;
+        this.tagOutput = tagOutput;
+        this.resultCacheSize = resultCacheSize;
+        this.resultCacheDirectory = resultCacheDirectory;
+        this.resultCacheDirectorySize = resultCacheDirectorySize;
+        this.deduplicate = deduplicate;
+        this.heartbeatInterval = heartbeatInterval;
+        this.additionalTaskClasses = List.copyOf(additionalTaskClasses);
     }
 
     public String javaExecutable() {
@@ -47,6 +89,280 @@ public String taskClass() {
         return onShutdownRequest;
     }
 
+    public Transport transport() {
+        return transport;
+    }
+
+    /**
+     * {@return the size in bytes above which payloads are passed through memory-mapped files instead of the socket, or
+     * {@code -1} if they never are}
+     */
+    public int sharedMemoryThreshold() {
+        return sharedMemoryThreshold;
+    }
+
+    /**
+     * {@return the directory memory-mapped payload files are created in, or {@code null} to use {@code /dev/shm} where
+     * available and the temporary directory otherwise}
+     */
+    public @Nullable Path sharedMemoryDirectory() {
+        return sharedMemoryDirectory;
+    }
+
+    /**
+     * {@return the most submissions that may be in flight to the daemon at once, or {@code -1} if there is no limit}
+     * Streamed submissions are not counted.
+     */
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * {@return how a submission is admitted while the in-flight limit is reached}
+     */
+    public Admission admission() {
+        return admission;
+    }
+
+    /**
+     * {@return whether the in-flight limit adapts to the round trip latency of submissions, between {@code 1} and
+     * {@link #maxInFlight()}, backing off as latency rises}
+     */
+    public boolean adaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * {@return how the daemon runs tasks}
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * {@return the number of threads the daemon's scheduler runs tasks on, or {@code -1} for the number of available
+     * processors} Has no effect on virtual threads.
+     */
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * {@return a listener notified of the outcome and timings of each submission, or {@code null} if there is none}
+     */
+    public ForkedTaskExecutorMetrics.@Nullable Listener metricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * {@return how long to wait for the daemon to start, including its task's warm-up, before giving up}
+     */
+    public Duration startupTimeout() {
+        return startupTimeout;
+    }
+
+    /**
+     * {@return the directory AppCDS archives are kept in, or {@code null} if they are not used} The first daemon started
+     * with a given Java executable, set of JVM options and task class records an archive of the classes it loaded as it
+     * exits, which later daemons with the same settings start from. Changing any of those settings, or any jar on a
+     * {@code -classpath} option, leaves existing archives unused. The daemon's JVM must support dynamic archives, and
+     * archives are not used at all if the classpath includes a non-empty directory, which the JVM cannot archive.
+     */
+    public @Nullable Path classDataSharingDirectory() {
+        return classDataSharingDirectory;
+    }
+
+    /**
+     * {@return how the daemon's standard output and error are forwarded}
+     */
+    public Output output() {
+        return output;
+    }
+
+    /**
+     * {@return the sink the daemon's output is passed to with {@link Output#SINK}, or {@code null} if there is none}
+     */
+    public @Nullable OutputSink outputSink() {
+        return outputSink;
+    }
+
+    /**
+     * {@return whether each line copied with {@link Output#LINES} starts with the daemon's process ID in brackets, to
+     * tell apart the output of several daemons} Output copied with {@link Output#RAW} is never tagged, as its chunks
+     * may end mid-line, and an {@link OutputSink} is given the process ID with each chunk.
+     */
+    public boolean tagOutput() {
+        return tagOutput;
+    }
+
+    /**
+     * {@return the most bytes of results kept in memory to answer repeated inputs, or {@code -1} if results are not
+     * cached in memory} Only set this for tasks whose result depends on nothing but their input: a cached result is
+     * returned for any later submission of the same input to the same task class, program options and classpath jars,
+     * without the daemon seeing it. Least recently used results are evicted first. Streamed submissions are never
+     * cached.
+     */
+    public long resultCacheSize() {
+        return resultCacheSize;
+    }
+
+    /**
+     * {@return the directory results are also cached in, across executors and runs, or {@code null} if they are not
+     * cached on disk} It is kept within {@link #resultCacheDirectorySize()}. As with {@link #resultCacheSize()}, only
+     * set this for tasks whose result depends on nothing but their input.
+     */
+    public @Nullable Path resultCacheDirectory() {
+        return resultCacheDirectory;
+    }
+
+    /**
+     * {@return the most bytes of results kept in the result cache directory} Once a result written there takes it past
+     * this, least recently used results are deleted first, including those written by other executors sharing the
+     * directory. Defaults to 1 GiB.
+     */
+    public long resultCacheDirectorySize() {
+        return resultCacheDirectorySize;
+    }
+
+    /**
+     * {@return whether a submission whose input equals that of one already in flight waits for that one's result or
+     * failure instead of being sent} Only submissions without a deadline are grouped; one that joins another is run
+     * at the priority the first was sent with. Inputs must not be modified while in flight.
+     */
+    public boolean deduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * {@return how often the daemon reports its memory, garbage collection and thread usage, or {@code null} if it does
+     * not} The latest report is available from {@link ForkedTaskExecutor#health()}, and lets a
+     * {@link ForkedTaskExecutorPool} route around or replace children under memory pressure.
+     */
+    public @Nullable Duration heartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * {@return task classes the daemon runs alongside the {@linkplain #taskClass() main one}, sharing its JVM} Each is
+     * constructed with the same program options, and submissions reach it through
+     * {@link ForkedTaskExecutor#task(String)}. Only the main task replaces the standard streams.
+     */
+    public List<String> additionalTaskClasses() {
+        return additionalTaskClasses;
+    }
+
+    /**
+     * Receives the daemon's standard output and error as bytes, without decoding them. Each stream is read on its own
+     * thread, so the sink may be called concurrently for the two streams of one daemon, and for different daemons.
+     */
+    @FunctionalInterface
+    public interface OutputSink {
+        enum Stream {
+            STDOUT,
+            STDERR
+        }
+
+        /**
+         * Called with each chunk read from one of the daemon's streams. Chunks end at a line break where the line fits
+         * in the read buffer, and the whole of a stream's remaining output once it closes. The array is reused once
+         * this returns, so must not be kept.
+         * @param pid the process ID of the daemon that wrote the output
+         */
+        void accept(long pid, Stream stream, byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    /**
+     * How the daemon runs tasks. Whatever the scheduler, submissions waiting for a thread are started in order of
+     * their {@link ForkedTaskExecutor.Priority}.
+     */
+    public enum Scheduler {
+        /**
+         * Use a virtual thread per task where the daemon's JVM supports them, and {@link #FIXED} otherwise.
+         */
+        DEFAULT,
+        /**
+         * Run tasks on a fixed pool of threads, suited to CPU-bound tasks.
+         */
+        FIXED,
+        /**
+         * Run tasks on a work-stealing {@link java.util.concurrent.ForkJoinPool}, suited to tasks that fork work of
+         * their own.
+         */
+        WORK_STEALING,
+        /**
+         * Run each task on its own virtual thread, suited to blocking tasks; the daemon's JVM must be Java 21 or newer.
+         */
+        VIRTUAL_THREADS,
+        /**
+         * Run tasks on a fixed pool of threads with a queue as long as the pool; once it is full, the daemon runs
+         * submissions on the thread that reads them, and stops reading more until they finish.
+         */
+        CALLER_RUNS
+    }
+
+    public enum Admission {
+        /**
+         * Block the submitting thread until the submission may be sent. A submission made on the thread that reads
+         * results, such as from a {@linkplain ForkedTaskExecutorMetrics.Listener metrics listener} or
+         * {@linkplain ForkedTaskExecutorSpec#onShutdownRequest() shutdown request callback}, is queued as for
+         * {@link #QUEUE} instead, as blocking that thread would stop the results that free the limit from being read.
+         */
+        BLOCK,
+        /**
+         * Fail the submission with a {@link java.util.concurrent.RejectedExecutionException}.
+         */
+        FAIL,
+        /**
+         * Return immediately, and send the submission from the parent process once the limit allows it; any deadline
+         * includes the time spent waiting. Queued submissions are sent from a thread of the
+         * {@linkplain java.util.concurrent.ForkJoinPool#commonPool() common pool}, never the thread reading results.
+         */
+        QUEUE
+    }
+
+    /**
+     * How the daemon's standard output and error are forwarded. None of these decode the output.
+     */
+    public enum Output {
+        /**
+         * Copy the daemon's output to {@link System#out} and {@link System#err} a line at a time, so that lines from
+         * different daemons are not interleaved.
+         */
+        LINES,
+        /**
+         * Copy the daemon's output to {@link System#out} and {@link System#err} in bulk as it arrives.
+         */
+        RAW,
+        /**
+         * Have the daemon write straight to this process's standard output and error, bypassing {@link System#out}
+         * and {@link System#err}; no threads are needed to copy it.
+         */
+        INHERIT,
+        /**
+         * Discard the daemon's output.
+         */
+        DISCARD,
+        /**
+         * Pass the daemon's output to the {@linkplain #outputSink() output sink}.
+         */
+        SINK
+    }
+
+    public enum Transport {
+        /**
+         * Use a Unix domain socket where the platform supports one, falling back to loopback TCP otherwise.
+         */
+        AUTO,
+        /**
+         * Always use a loopback TCP socket.
+         */
+        TCP,
+        /**
+         * Always use a Unix domain socket, failing if the platform does not support one.
+         */
+        UNIX_DOMAIN
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -58,6 +374,26 @@ public static final class Builder {
         private boolean hideStacktrace = false;
         private String taskClass;
         private @Nullable Runnable onShutdownRequest;
+        private Transport transport = Transport.AUTO;
+        private int sharedMemoryThreshold = -1;
+        private @Nullable Path sharedMemoryDirectory;
+        private int maxInFlight = -1;
+        private Admission admission = Admission.BLOCK;
+        private boolean adaptiveConcurrency = false;
+        private Scheduler scheduler = Scheduler.DEFAULT;
+        private int parallelism = -1;
+        private ForkedTaskExecutorMetrics.@Nullable Listener metricsListener;
+        private Duration startupTimeout = Duration.ofSeconds(4);
+        private @Nullable Path classDataSharingDirectory;
+        private Output output = Output.LINES;
+        private @Nullable OutputSink outputSink;
+        private boolean tagOutput;
+        private long resultCacheSize = -1;
+        private @Nullable Path resultCacheDirectory;
+        private long resultCacheDirectorySize = 1024L * 1024 * 1024;
+        private boolean deduplicate = false;
+        private @Nullable Duration heartbeatInterval;
+        private final List<String> additionalTaskClasses = new ArrayList<>();
 
         private Builder() {}
 
@@ -96,8 +432,142 @@ public Builder onShutdownRequest(Runnable onShutdownRequest) {
             return this;
         }
 
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public Builder sharedMemoryThreshold(int sharedMemoryThreshold) {
+            this.sharedMemoryThreshold = sharedMemoryThreshold;
+            return this;
+        }
+
+        public Builder sharedMemoryDirectory(Path sharedMemoryDirectory) {
+            this.sharedMemoryDirectory = sharedMemoryDirectory;
+            return this;
+        }
+
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder admission(Admission admission) {
+            this.admission = admission;
+            return this;
+        }
+
+        public Builder adaptiveConcurrency(boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
+
+        public Builder scheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder metricsListener(ForkedTaskExecutorMetrics.Listener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        public Builder startupTimeout(Duration startupTimeout) {
+            this.startupTimeout = startupTimeout;
+            return this;
+        }
+
+        public Builder classDataSharingDirectory(Path classDataSharingDirectory) {
+            this.classDataSharingDirectory = classDataSharingDirectory;
+            return this;
+        }
+
+        public Builder output(Output output) {
+            this.output = output;
+            return this;
+        }
+
+        /**
+         * Passes the daemon's output to the given sink, as with {@link Output#SINK}.
+         */
+        public Builder outputSink(OutputSink outputSink) {
+            this.outputSink = outputSink;
+            this.output = Output.SINK;
+            return this;
+        }
+
+        public Builder tagOutput(boolean tagOutput) {
+            this.tagOutput = tagOutput;
+            return this;
+        }
+
+        public Builder resultCacheSize(long resultCacheSize) {
+            this.resultCacheSize = resultCacheSize;
+            return this;
+        }
+
+        public Builder resultCacheDirectory(Path resultCacheDirectory) {
+            this.resultCacheDirectory = resultCacheDirectory;
+            return this;
+        }
+
+        public Builder resultCacheDirectorySize(long resultCacheDirectorySize) {
+            this.resultCacheDirectorySize = resultCacheDirectorySize;
+            return this;
+        }
+
+        public Builder deduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+
+        public Builder heartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+            return this;
+        }
+
+        public Builder addTaskClass(String taskClass) {
+            additionalTaskClasses.add(taskClass);
+            return this;
+        }
+
         public ForkedTaskExecutorSpec build() {
-            return new ForkedTaskExecutorSpec(javaExecutable, jvmOptions, programOptions, hideStacktrace, taskClass, onShutdownRequest);
+            if (maxInFlight < 1 && maxInFlight != -1) {
+                throw new IllegalArgumentException("In-flight limit must be positive, or -1 for no limit, got " + maxInFlight);
+            }
+            if (adaptiveConcurrency && maxInFlight == -1) {
+                throw new IllegalArgumentException("Adaptive concurrency requires an in-flight limit");
+            }
+            if (startupTimeout.isNegative() || startupTimeout.isZero()) {
+                throw new IllegalArgumentException("Startup timeout must be positive, got " + startupTimeout);
+            }
+            if (parallelism < 1 && parallelism != -1) {
+                throw new IllegalArgumentException("Parallelism must be positive, or -1 for the number of available processors, got " + parallelism);
+            }
+            if (output == Output.SINK && outputSink == null) {
+                throw new IllegalArgumentException("Output sink must be set to forward output to a sink");
+            }
+            if (tagOutput && output != Output.LINES) {
+                throw new IllegalArgumentException("Only output copied as lines can be tagged, got " + output);
+            }
+            if (resultCacheSize < 0 && resultCacheSize != -1) {
+                throw new IllegalArgumentException("Result cache size must not be negative, or -1 for no memory cache, got " + resultCacheSize);
+            }
+            if (resultCacheDirectorySize < 1) {
+                throw new IllegalArgumentException("Result cache directory size must be positive, got " + resultCacheDirectorySize);
+            }
+            if (heartbeatInterval != null && heartbeatInterval.toMillis() < 1) {
+                throw new IllegalArgumentException("Heartbeat interval must be at least a millisecond, got " + heartbeatInterval);
+            }
+            if (additionalTaskClasses.contains(taskClass) || additionalTaskClasses.stream().distinct().count() != additionalTaskClasses.size()) {
+                throw new IllegalArgumentException("Task classes must be distinct, got " + taskClass + " and " + additionalTaskClasses);
+            }
+            return new ForkedTaskExecutorSpec(javaExecutable, jvmOptions, programOptions, hideStacktrace, taskClass, onShutdownRequest, transport, sharedMemoryThreshold, sharedMemoryDirectory, maxInFlight, admission, adaptiveConcurrency, scheduler, parallelism, metricsListener, startupTimeout, classDataSharingDirectory, output, outputSink, tagOutput, resultCacheSize, resultCacheDirectory, resultCacheDirectorySize, deduplicate, heartbeatInterval, additionalTaskClasses);
         }
     }
 }
@@ -0,0 +1,114 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Futures for submissions awaiting a result, keyed by submission id. Ids are handed out sequentially, so live ids
+// almost always fit in a ring indexed by the id itself, which needs no boxing or map nodes; an id whose slot is still
+// held by a submission a full ring older falls back to a map.
+final class PendingResults {
+    // Consecutive ids are spread this many bits apart, so that threads submitting at the same time do not write to
+    // the same cache line
+    private static final int SPREAD = 4;
+
+    static final class Pending extends CompletableFuture<byte[]> {
+        private final int id;
+        // When the submission was sent, for measuring its round trip
+        long sentAt;
+
+        private Pending(int id) {
+            this.id = id;
+        }
+
+        int id() {
+            return id;
+        }
+    }
+
+    private final AtomicReferenceArray<@Nullable Pending> ring;
+    private final int bits;
+    private final int mask;
+    private final Map<Integer, Pending> overflow = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    PendingResults(int capacity) {
+        this.bits = Math.max(SPREAD, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+        this.mask = (1 << bits) - 1;
+        this.ring = new AtomicReferenceArray<>(1 << bits);
+    }
+
+    private int index(int id) {
+        // Rotates the low bits of the id, which maps ids to slots one-to-one
+        int low = id & mask;
+        return ((low << SPREAD) | (low >>> (bits - SPREAD))) & mask;
+    }
+
+    Pending add(int id) {
+        var pending = new Pending(id);
+        if (!ring.compareAndSet(index(id), null, pending)) {
+            overflow.put(id, pending);
+        }
+        size.incrementAndGet();
+        return pending;
+    }
+
+    @Nullable Pending get(int id) {
+        var pending = ring.get(index(id));
+        if (pending != null && pending.id == id) {
+            return pending;
+        }
+        return overflow.isEmpty() ? null : overflow.get(id);
+    }
+
+    @Nullable Pending remove(int id) {
+        int index = index(id);
+        var pending = ring.get(index);
+        if (pending != null && pending.id == id) {
+            if (ring.compareAndSet(index, pending, null)) {
+                size.decrementAndGet();
+                return pending;
+            }
+            return null;
+        }
+        if (overflow.isEmpty()) {
+            return null;
+        }
+        pending = overflow.remove(id);
+        if (pending != null) {
+            size.decrementAndGet();
+        }
+        return pending;
+    }
+
+    boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    // Removes every pending result, passing each to the action
+    void removeAll(Consumer<? super Pending> action) {
+        for (int i = 0; i < ring.length(); i++) {
+            var pending = ring.getAndSet(i, null);
+            if (pending != null) {
+                size.decrementAndGet();
+                action.accept(pending);
+            }
+        }
+        for (var id : overflow.keySet()) {
+            var pending = overflow.remove(id);
+            if (pending != null) {
+                size.decrementAndGet();
+                action.accept(pending);
+            }
+        }
+    }
+}
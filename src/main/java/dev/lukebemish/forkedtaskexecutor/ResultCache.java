@@ -0,0 +1,266 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Answers submissions whose input has been seen before with the result the daemon gave for it, for tasks that are pure
+// functions of their input. Results are keyed by a SHA-256 hash of the task class, program options, classpath jars and
+// input, so that each of a daemon's task classes has results of its own. The memory tier keeps the most recently used
+// results up to a total size; the disk tier, if any, keeps one file per result, and deletes the least recently used
+// ones once the directory outgrows its own size. Only successful results are cached.
+final class ResultCache {
+    // One for each of the spec's task classes, in order
+    private final MessageDigest[] prefixes;
+    private final long maxBytes;
+    private final @Nullable Path directory;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    // The directory's size as of the last time it was listed, plus what this cache has written since; other executors
+    // may write to it too, so it is listed again before anything is deleted
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final Object evicting = new Object();
+
+    private ResultCache(MessageDigest[] prefixes, long maxBytes, @Nullable Path directory, long maxDiskBytes) {
+        this.prefixes = prefixes;
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    static @Nullable ResultCache create(ForkedTaskExecutorSpec spec) {
+        if (spec.resultCacheSize() < 0 && spec.resultCacheDirectory() == null) {
+            return null;
+        }
+        List<String> stamps;
+        try {
+            if (spec.resultCacheDirectory() != null) {
+                Files.createDirectories(spec.resultCacheDirectory());
+            }
+            // A changed jar may change the task's results, so leaves earlier results on disk unused
+            stamps = ClassDataSharing.classpathStamps(spec.jvmOptions());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> taskClasses = new ArrayList<>();
+        taskClasses.add(spec.taskClass());
+        taskClasses.addAll(spec.additionalTaskClasses());
+        var prefixes = new MessageDigest[taskClasses.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            update(digest, taskClasses.get(i));
+            for (var option : spec.programOptions()) {
+                update(digest, option);
+            }
+            for (var stamp : stamps) {
+                update(digest, stamp);
+            }
+            prefixes[i] = digest;
+        }
+        var cache = new ResultCache(prefixes, Math.max(0, spec.resultCacheSize()), spec.resultCacheDirectory(), spec.resultCacheDirectorySize());
+        if (spec.resultCacheDirectory() != null) {
+            // The directory may have been left larger by an earlier run, or one with a larger size
+            cache.evict(spec.resultCacheDirectory());
+        }
+        return cache;
+    }
+
+    private static void update(MessageDigest digest, String part) {
+        digest.update(part.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private String key(int task, byte[] input) {
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest) prefixes[task].clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        return HexFormat.of().formatHex(digest.digest(input));
+    }
+
+    // Returns the cached result if there is one, and otherwise submits the input and caches its result; the returned
+    // array is the caller's own
+    CompletableFuture<byte[]> get(int task, byte[] input, Runnable onHit, Supplier<CompletableFuture<byte[]>> submit) {
+        var key = key(task, input);
+        var cached = find(key);
+        if (cached != null) {
+            onHit.run();
+            return CompletableFuture.completedFuture(cached.clone());
+        }
+        var sent = submit.get();
+        // Cached before the caller's future completes, so that the caller neither modifies the result before it is
+        // copied nor submits the input again before it is cached
+        var out = sent.thenApply(result -> {
+            var copy = result.clone();
+            remember(key, copy);
+            if (directory != null) {
+                // Keep disk writes off the thread reading results
+                ForkJoinPool.commonPool().execute(() -> write(key, copy));
+            }
+            return result;
+        });
+        out.whenComplete((result, t) -> {
+            if (out.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        return out;
+    }
+
+    private byte @Nullable [] find(String key) {
+        synchronized (this) {
+            var cached = memory.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (directory == null) {
+            return null;
+        }
+        try {
+            var path = directory.resolve(key);
+            var cached = Files.readAllBytes(path);
+            touch(path);
+            remember(key, cached);
+            return cached;
+        } catch (IOException e) {
+            // A missing or unreadable entry is replaced once the result is known again
+            return null;
+        }
+    }
+
+    // Eviction deletes the least recently modified results first, so a result read is marked as recently used
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            // The result may be evicted sooner, which only costs running its task again
+        }
+    }
+
+    private synchronized void remember(String key, byte[] result) {
+        if (result.length > maxBytes) {
+            return;
+        }
+        var previous = memory.put(key, result);
+        if (previous != null) {
+            memoryBytes -= previous.length;
+        }
+        memoryBytes += result.length;
+        Iterator<Map.Entry<String, byte[]>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    private void write(String key, byte[] result) {
+        var directory = this.directory;
+        if (directory == null || result.length > maxDiskBytes) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            // Written to a temporary file first, so that a concurrent reader never sees a partial result
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, result);
+            Files.move(temporary, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (diskBytes.addAndGet(result.length) > maxDiskBytes) {
+                evict(directory);
+            }
+        } catch (IOException e) {
+            // The disk tier is best effort; the result is written again if it is ever computed again
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Nothing more can be done
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Path path;
+        private final long size;
+        private final FileTime modified;
+
+        private Entry(Path path, long size, FileTime modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    // Deletes the least recently used results until the directory is within its size
+    private void evict(Path directory) {
+        synchronized (evicting) {
+            List<Entry> entries = new ArrayList<>();
+            long total = 0;
+            try (var files = Files.list(directory)) {
+                for (var path : files.toList()) {
+                    // Results are named by their key alone; anything else, such as a result still being written, is
+                    // left alone
+                    if (path.getFileName().toString().contains(".")) {
+                        continue;
+                    }
+                    try {
+                        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        if (attributes.isRegularFile()) {
+                            entries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+                            total += attributes.size();
+                        }
+                    } catch (IOException e) {
+                        // Deleted by another executor in the meantime
+                    }
+                }
+            } catch (IOException e) {
+                // The disk tier is best effort; the directory is listed again after the next write
+                return;
+            }
+            entries.sort(Comparator.comparing(entry -> entry.modified));
+            for (var entry : entries) {
+                if (total <= maxDiskBytes) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(entry.path);
+                } catch (IOException e) {
+                    // Left for a later eviction to try again
+                    continue;
+                }
+                total -= entry.size;
+            }
+            diskBytes.set(total);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+// Payloads above the threshold are written to memory-mapped files in this directory, and only their name is sent
+// over the socket. The daemon maps input files directly, and writes large results back the same way.
+final class SharedMemory implements AutoCloseable {
+    private static final Path DEV_SHM = Path.of("/dev/shm");
+
+    private final Path directory;
+    private final int threshold;
+
+    private SharedMemory(Path directory, int threshold) {
+        this.directory = directory;
+        this.threshold = threshold;
+    }
+
+    static SharedMemory create(@Nullable Path root, int threshold) throws IOException {
+        if (root == null) {
+            // Prefer a tmpfs so that the files never need to reach a disk
+            root = Files.isDirectory(DEV_SHM) && Files.isWritable(DEV_SHM) ? DEV_SHM : Path.of(System.getProperty("java.io.tmpdir"));
+        }
+        return new SharedMemory(Files.createTempDirectory(root, "forkedtaskexecutor"), threshold);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    int threshold() {
+        return threshold;
+    }
+
+    boolean shouldShare(int length) {
+        return length > threshold;
+    }
+
+    // Copies the remaining bytes of the buffer, without moving its position
+    String write(String name, ByteBuffer data) throws IOException {
+        try (var channel = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, data.remaining()).put(data.duplicate());
+        }
+        return name;
+    }
+
+    byte[] read(String name) throws IOException {
+        var path = directory.resolve(name);
+        try {
+            return Files.readAllBytes(path);
+        } finally {
+            delete(name);
+        }
+    }
+
+    void delete(String name) {
+        var path = directory.resolve(name);
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // The file may still be mapped on platforms that do not allow deleting mapped files
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.deleteIfExists(directory);
+    }
+}
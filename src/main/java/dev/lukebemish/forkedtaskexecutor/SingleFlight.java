@@ -0,0 +1,135 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Groups submissions of equal inputs made while one of them is in flight, so that the daemon runs the input once and
+// every caller gets its result or failure. Each caller has its own future: cancelling it only cancels the submission
+// once every caller has cancelled, and each caller gets its own copy of the result.
+final class SingleFlight {
+    private final ConcurrentHashMap<Input, Flight> flights = new ConcurrentHashMap<>();
+
+    // Equal inputs only share a submission if they are for the same task
+    private static final class Input {
+        private final int task;
+        private final byte[] bytes;
+        private final int hash;
+
+        private Input(int task, byte[] bytes) {
+            this.task = task;
+            this.bytes = bytes;
+            this.hash = 31 * task + Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Input && ((Input) obj).hash == hash && ((Input) obj).task == task && Arrays.equals(((Input) obj).bytes, bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Flight {
+        private final Input input;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        // The first caller to be completed is given the result itself, and the others copies
+        private final AtomicBoolean handedOut = new AtomicBoolean();
+        private @Nullable CompletableFuture<byte[]> sent;
+        private int callers;
+        private boolean abandoned;
+
+        private Flight(Input input) {
+            this.input = input;
+        }
+
+        // Returns null if every earlier caller has cancelled, so that the submission must be made again
+        private synchronized @Nullable CompletableFuture<byte[]> join() {
+            if (abandoned) {
+                return null;
+            }
+            callers++;
+            var out = new CompletableFuture<byte[]>();
+            result.whenComplete((value, t) -> {
+                if (t != null) {
+                    out.completeExceptionally(t);
+                } else {
+                    out.complete(handedOut.compareAndSet(false, true) ? value : value.clone());
+                }
+            });
+            out.whenComplete((value, t) -> {
+                if (out.isCancelled()) {
+                    leave();
+                }
+            });
+            return out;
+        }
+
+        private synchronized void leave() {
+            if (--callers > 0 || result.isDone()) {
+                return;
+            }
+            abandoned = true;
+            flights.remove(input, this);
+            if (sent != null) {
+                sent.cancel(true);
+            }
+        }
+
+        private void send(CompletableFuture<byte[]> sent) {
+            synchronized (this) {
+                this.sent = sent;
+                if (abandoned) {
+                    sent.cancel(true);
+                }
+            }
+            sent.whenComplete((value, t) -> {
+                // Later submissions of the same input are sent again, rather than given this result
+                flights.remove(input, this);
+                if (t != null) {
+                    result.completeExceptionally(t);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+    }
+
+    // The input must not be modified while it is in flight
+    CompletableFuture<byte[]> submit(int task, byte[] input, Runnable onJoin, Supplier<CompletableFuture<byte[]>> submit) {
+        var key = new Input(task, input);
+        while (true) {
+            var flight = new Flight(key);
+            var existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                // Nobody else has seen this flight yet, so it cannot have been abandoned
+                var out = flight.join();
+                CompletableFuture<byte[]> sent;
+                try {
+                    sent = submit.get();
+                } catch (RuntimeException | Error t) {
+                    // Nothing was sent, so fail everyone who joined in the meantime, and let later submissions try again
+                    flights.remove(key, flight);
+                    flight.result.completeExceptionally(t);
+                    return out;
+                }
+                flight.send(sent);
+                return out;
+            }
+            var out = existing.join();
+            if (out != null) {
+                onJoin.run();
+                return out;
+            }
+            // Every caller of that flight cancelled while this one joined; it is removed, so try again
+            flights.remove(key, existing);
+        }
+    }
+}
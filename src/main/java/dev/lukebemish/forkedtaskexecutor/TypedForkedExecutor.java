@@ -0,0 +1,123 @@
+package dev.lukebemish.forkedtaskexecutor;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Submits values to a daemon running a {@code dev.lukebemish.forkedtaskexecutor.runner.TypedTask}, converting them to
+ * and from bytes with the given codecs. Each input is encoded into one buffer, sized by the codec, which is queued to
+ * be sent as it is, and results are decoded straight from the array they arrive in; {@link Codec#bytes()} passes
+ * arrays through without copying them at all. The codecs must match those of the task.
+ *
+ * @param <I> the type of inputs
+ * @param <O> the type of results
+ */
+public final class TypedForkedExecutor<I, O> implements AutoCloseable {
+    private final ForkedTaskExecutor executor;
+    private final Codec<I> inputCodec;
+    private final Codec<O> outputCodec;
+
+    /**
+     * Wraps an executor, which is closed when this is closed.
+     */
+    public TypedForkedExecutor(ForkedTaskExecutor executor, Codec<I> inputCodec, Codec<O> outputCodec) {
+        this.executor = executor;
+        this.inputCodec = inputCodec;
+        this.outputCodec = outputCodec;
+    }
+
+    /**
+     * {@return the executor submissions are sent through}
+     */
+    public ForkedTaskExecutor executor() {
+        return executor;
+    }
+
+    /**
+     * Submits an input without waiting for its result, as for {@link ForkedTaskExecutor#submitAsync(ByteBuffer)}, so
+     * that any array the input is encoded as, or kept in, must not be modified until the result arrives. The result is
+     * decoded by the first thread to get it, rather than by the thread reading every result. If the input cannot be
+     * encoded, or the result decoded, the returned future fails with the codec's exception.
+     */
+    public Future<O> submitAsync(I input) {
+        CompletableFuture<byte[]> sent;
+        try {
+            sent = executor.submitCompletable(0, Codecs.encode(inputCodec, input));
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return new Result(sent);
+    }
+
+    private final class Result implements Future<O> {
+        private final CompletableFuture<byte[]> sent;
+        private boolean decoded;
+        private @Nullable O value;
+        private @Nullable ExecutionException failure;
+
+        private Result(CompletableFuture<byte[]> sent) {
+            this.sent = sent;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return sent.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return sent.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return sent.isDone();
+        }
+
+        @Override
+        public O get() throws InterruptedException, ExecutionException {
+            return decode(sent.get());
+        }
+
+        @Override
+        public O get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return decode(sent.get(timeout, unit));
+        }
+
+        // Decoded once, by whichever caller gets there first
+        private synchronized O decode(byte[] result) throws ExecutionException {
+            if (!decoded) {
+                try {
+                    value = Codecs.decode(outputCodec, result);
+                } catch (Throwable t) {
+                    failure = new ExecutionException(t);
+                }
+                decoded = true;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return value;
+        }
+    }
+
+    public O submit(I input) {
+        try {
+            return submitAsync(input).get();
+        } catch (ExecutionException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,94 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Reusable buffers for inputs and results, so that a daemon handling many submissions need not allocate for each.
+ * Buffers are handed out in power-of-two sizes, as heap or direct buffers; those larger than {@value #LARGEST} bytes
+ * are allocated each time and never kept. A buffer taken from the pool belongs to whoever took it until released, and
+ * must not be used afterwards. Releasing a buffer that did not come from the pool, or releasing one twice, does nothing.
+ */
+public final class BufferPool {
+    /**
+     * The capacity of the largest buffers kept for reuse.
+     */
+    public static final int LARGEST = 1024 * 1024;
+    private static final int SMALLEST_BITS = 8;
+    private static final int LARGEST_BITS = 20;
+    // Buffers of each size kept at once; more released than this are left to the garbage collector
+    private static final int KEPT = 64;
+
+    private final ArrayDeque<ByteBuffer>[] heap = newClasses();
+    private final ArrayDeque<ByteBuffer>[] direct = newClasses();
+    // Buffers handed out and not yet released, so that only those are taken back
+    private final Set<ByteBuffer> lent = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    BufferPool() {}
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ByteBuffer>[] newClasses() {
+        var classes = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[LARGEST_BITS - SMALLEST_BITS + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayDeque<ByteBuffer>();
+        }
+        return classes;
+    }
+
+    private static int sizeClass(int capacity) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1);
+        return Math.max(0, bits - SMALLEST_BITS);
+    }
+
+    /**
+     * {@return a cleared heap buffer with at least the given capacity, backed by an array at offset {@code 0}}
+     */
+    public ByteBuffer acquire(int capacity) {
+        return acquire(capacity, false);
+    }
+
+    /**
+     * {@return a cleared direct buffer with at least the given capacity} Direct results are written to the parent
+     * process without being copied to the heap first.
+     */
+    public ByteBuffer acquireDirect(int capacity) {
+        return acquire(capacity, true);
+    }
+
+    private ByteBuffer acquire(int capacity, boolean isDirect) {
+        if (capacity > LARGEST) {
+            return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        int sizeClass = sizeClass(capacity);
+        var classes = isDirect ? direct : heap;
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = classes[sizeClass].poll();
+            if (buffer == null) {
+                int size = 1 << (sizeClass + SMALLEST_BITS);
+                buffer = isDirect ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+            }
+            lent.add(buffer);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a buffer to the pool. Neither the buffer nor any view of its memory may be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        synchronized (this) {
+            if (!lent.remove(buffer)) {
+                return;
+            }
+            var classes = buffer.isDirect() ? direct : heap;
+            var queue = classes[sizeClass(buffer.capacity())];
+            if (queue.size() < KEPT) {
+                queue.push(buffer);
+            }
+        }
+    }
+}
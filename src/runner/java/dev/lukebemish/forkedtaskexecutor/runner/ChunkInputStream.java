@@ -0,0 +1,128 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Receives the chunks of a streamed payload from the other side of the socket. The sender may have at most WINDOW
+// chunks outstanding; each chunk read here grants it credit for another, so memory use is bounded by the window.
+final class ChunkInputStream extends InputStream {
+    static final int WINDOW = 8;
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final byte[] END = new byte[0];
+
+    interface Credit {
+        void grant(int chunks) throws IOException;
+    }
+
+    private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+    private final Credit credit;
+    private volatile IOException failure;
+    private boolean closed;
+    private byte[] current;
+    private int position;
+
+    ChunkInputStream(Credit credit) {
+        this.credit = credit;
+    }
+
+    synchronized void accept(byte[] chunk) throws IOException {
+        if (closed) {
+            // Nobody will read this chunk, but the sender still needs its credit back
+            credit.grant(1);
+        } else {
+            chunks.add(chunk);
+        }
+    }
+
+    void finish() {
+        chunks.add(END);
+    }
+
+    void abort(IOException failure) {
+        this.failure = failure;
+        chunks.add(END);
+    }
+
+    // Returns false at the end of the stream
+    private boolean fill() throws IOException {
+        while (true) {
+            if (current == END) {
+                if (failure != null) {
+                    throw new IOException(failure.getMessage(), failure);
+                }
+                return false;
+            }
+            if (current != null) {
+                if (position < current.length) {
+                    return true;
+                }
+                // This chunk is used up, so the sender may send another
+                credit.grant(1);
+                current = null;
+            }
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                var exception = new InterruptedIOException("Interrupted while waiting for chunk");
+                exception.initCause(e);
+                throw exception;
+            }
+            position = 0;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        int unread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unread = current != null && current != END ? 1 : 0;
+            current = END;
+            byte[] chunk;
+            while ((chunk = chunks.poll()) != null) {
+                if (chunk != END) {
+                    unread++;
+                }
+            }
+        }
+        if (unread > 0) {
+            credit.grant(unread);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+
+// Sends a streamed result to the parent process in chunks. At most ChunkInputStream.WINDOW chunks may be
+// outstanding; writing blocks until the parent has read enough of them to grant more credit.
+final class ChunkOutputStream extends OutputStream {
+    interface Sink {
+        void chunk(byte[] bytes, int length) throws IOException;
+
+        void end() throws IOException;
+
+        void abort() throws IOException;
+    }
+
+    private final Semaphore credits = new Semaphore(ChunkInputStream.WINDOW);
+    // Each chunk is handed off to the sink, so a fresh buffer is used for the next one
+    private byte[] buffer = new byte[ChunkInputStream.CHUNK_SIZE];
+    private final Sink sink;
+    private int count;
+    private boolean finished;
+
+    ChunkOutputStream(Sink sink) {
+        this.sink = sink;
+    }
+
+    void credit(int chunks) {
+        credits.release(chunks);
+    }
+
+    private void send() throws IOException {
+        if (finished) {
+            throw new IOException("Stream is closed");
+        }
+        try {
+            credits.acquire();
+        } catch (InterruptedException e) {
+            var exception = new InterruptedIOException("Interrupted while waiting for credit");
+            exception.initCause(e);
+            throw exception;
+        }
+        sink.chunk(buffer, count);
+        buffer = new byte[ChunkInputStream.CHUNK_SIZE];
+        count = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            send();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        while (len > 0) {
+            if (count == buffer.length) {
+                send();
+            }
+            int copied = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, copied);
+            count += copied;
+            off += copied;
+            len -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            send();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        flush();
+        finished = true;
+        sink.end();
+    }
+
+    // Tells the parent process the result will not be completed, unless it already has been
+    void abort() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        sink.abort();
+    }
+}
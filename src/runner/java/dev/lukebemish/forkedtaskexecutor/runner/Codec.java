@@ -0,0 +1,76 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values to and from the bytes sent between the parent process and the daemon, reading directly from the
+ * buffer a submission arrives in and writing directly into the buffer a result is sent from, which is taken from the
+ * daemon's {@link BufferPool}. The parent's counterpart is {@code dev.lukebemish.forkedtaskexecutor.Codec}, which has
+ * the same methods, so that a single class may implement both.
+ *
+ * @param <T> the type of values converted
+ */
+public interface Codec<T> {
+    /**
+     * {@return the number of bytes to make room for before encoding a value} A buffer too small for the value is
+     * replaced with a larger one and the value encoded again, so this need not be exact.
+     */
+    int sizeHint(T value);
+
+    /**
+     * Writes a value at the buffer's position, moving it past the written bytes. Throws a
+     * {@link BufferOverflowException} if the buffer has too little room, after which the value is encoded again into a
+     * larger buffer.
+     */
+    void encode(T value, ByteBuffer output) throws IOException;
+
+    /**
+     * Reads a value from the buffer's remaining bytes. The buffer must not be used once this method returns, so any
+     * part of it kept in the value must be copied.
+     */
+    T decode(ByteBuffer input) throws IOException;
+
+    /**
+     * {@return a codec for arrays as they are} A {@link TypedTask} copies each input out of the pooled buffer it
+     * arrives in, as that buffer is reused, and sends each result from the returned array without copying it. Calling
+     * the codec's methods directly copies the array into or out of the buffer.
+     */
+    static Codec<byte[]> bytes() {
+        return Codecs.BYTES;
+    }
+
+    /**
+     * {@return a codec for strings, as UTF-8}
+     */
+    static Codec<String> utf8() {
+        return Codecs.UTF8;
+    }
+
+    /**
+     * {@return a codec for values written and read as with {@link java.io.DataOutputStream} and
+     * {@link java.io.DataInputStream}, without either stream's intermediate buffers}
+     */
+    static <T> Codec<T> record(RecordWriter<T> writer, RecordReader<T> reader) {
+        return new Codecs.Record<>(writer, reader);
+    }
+
+    /**
+     * Writes a value for {@link #record(RecordWriter, RecordReader)}.
+     */
+    @FunctionalInterface
+    interface RecordWriter<T> {
+        void write(T value, DataOutput output) throws IOException;
+    }
+
+    /**
+     * Reads a value for {@link #record(RecordWriter, RecordReader)}.
+     */
+    @FunctionalInterface
+    interface RecordReader<T> {
+        T read(DataInput input) throws IOException;
+    }
+}
@@ -6,7 +6,11 @@
 final class ExecutorUtils {
     private ExecutorUtils() {}
 
-    static ExecutorService newService() {
-        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    static ExecutorService newService(int parallelism) {
+        return Executors.newFixedThreadPool(parallelism);
+    }
+
+    static ExecutorService newVirtualService() {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
     }
 }
@@ -0,0 +1,184 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+// The only thread that writes to the socket. Any thread may queue frames without blocking; the writer drains every
+// frame ready at the time into one gathering write, copying headers and small payloads into a single pooled direct
+// buffer, and passing large payloads through as they are. Payload buffers must not be modified once queued; a frame may
+// carry an action run once it has been written, after which its payload may be reused.
+final class FrameWriter extends Thread {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int COPY_THRESHOLD = 16 * 1024;
+
+    private static final class Frame {
+        private final ByteBuffer header;
+        private final ByteBuffer payload;
+        private final Runnable onWritten;
+
+        private Frame(ByteBuffer header, ByteBuffer payload, Runnable onWritten) {
+            this.header = header;
+            this.payload = payload;
+            this.onWritten = onWritten;
+        }
+
+        private int copiedSize() {
+            int size = header.remaining();
+            if (payload != null && payload.remaining() <= COPY_THRESHOLD) {
+                size += payload.remaining();
+            }
+            return size;
+        }
+    }
+
+    private final SocketChannel channel;
+    private final Queue<Frame> frames = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final List<ByteBuffer> batch = new ArrayList<>();
+    private final List<Runnable> written = new ArrayList<>();
+    private volatile boolean finishing;
+    private volatile IOException failure;
+    // A frame taken from the queue that did not fit in the previous batch
+    private Frame carried;
+
+    FrameWriter(SocketChannel channel, String name) {
+        this.channel = channel;
+        this.setName(name);
+        this.setDaemon(true);
+    }
+
+    void write(ByteBuffer header) throws IOException {
+        enqueue(new Frame(header, null, null));
+    }
+
+    void write(ByteBuffer header, ByteBuffer payload) throws IOException {
+        enqueue(new Frame(header, payload, null));
+    }
+
+    // The action is not run if the frame is never written, as the socket failed first
+    void write(ByteBuffer header, ByteBuffer payload, Runnable onWritten) throws IOException {
+        enqueue(new Frame(header, payload, onWritten));
+    }
+
+    private void enqueue(Frame frame) throws IOException {
+        var failure = this.failure;
+        if (failure != null) {
+            throw new IOException("Failed to write to socket", failure);
+        }
+        if (finishing) {
+            throw new IOException("Socket is closed");
+        }
+        frames.add(frame);
+        if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    // Writes everything queued so far, then stops; returns whether everything was written successfully
+    boolean finish() throws IOException {
+        finishing = true;
+        LockSupport.unpark(this);
+        try {
+            join();
+        } catch (InterruptedException e) {
+            var exception = new InterruptedIOException("Interrupted while waiting for frames to be written");
+            exception.initCause(e);
+            throw exception;
+        }
+        return failure == null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (carried == null && frames.isEmpty()) {
+                    if (finishing && frames.isEmpty()) {
+                        return;
+                    }
+                    sleeping.set(true);
+                    if (frames.isEmpty() && !finishing) {
+                        LockSupport.park(this);
+                    }
+                    sleeping.set(false);
+                    continue;
+                }
+                writeBatch();
+            }
+        } catch (IOException e) {
+            failure = e;
+            frames.clear();
+            try {
+                // Closing the socket wakes the reading side, which will then shut down
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        buffer.clear();
+        batch.clear();
+        int segmentStart = 0;
+        Frame frame = carried != null ? carried : frames.poll();
+        carried = null;
+        while (frame != null) {
+            if (frame.copiedSize() > buffer.remaining()) {
+                if (buffer.position() == 0) {
+                    // Too large to ever be copied, so pass everything through
+                    batch.add(frame.header);
+                    if (frame.payload != null) {
+                        batch.add(frame.payload);
+                    }
+                    if (frame.onWritten != null) {
+                        written.add(frame.onWritten);
+                    }
+                    frame = null;
+                } else {
+                    carried = frame;
+                }
+                break;
+            }
+            buffer.put(frame.header);
+            var payload = frame.payload;
+            if (payload != null) {
+                if (payload.remaining() <= COPY_THRESHOLD) {
+                    buffer.put(payload);
+                } else {
+                    batch.add(buffer.duplicate().position(segmentStart).limit(buffer.position()));
+                    batch.add(payload);
+                    segmentStart = buffer.position();
+                }
+            }
+            if (frame.onWritten != null) {
+                written.add(frame.onWritten);
+            }
+            frame = frames.poll();
+        }
+        if (buffer.position() > segmentStart) {
+            batch.add(buffer.duplicate().position(segmentStart).limit(buffer.position()));
+        }
+        var buffers = batch.toArray(new ByteBuffer[0]);
+        int offset = 0;
+        while (offset < buffers.length) {
+            channel.write(buffers, offset, buffers.length - offset);
+            while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+        for (var action : written) {
+            action.run();
+        }
+        written.clear();
+    }
+}
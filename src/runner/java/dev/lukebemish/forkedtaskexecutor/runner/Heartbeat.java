@@ -0,0 +1,108 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+// Reports the daemon's memory, garbage collection and thread usage to the parent process at a fixed interval, so that
+// it can stop sending submissions to, or replace, a daemon under memory pressure before it fails
+final class Heartbeat {
+    private final List<MemoryPoolMXBean> heapPools;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private Heartbeat() {
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+    }
+
+    // Returns the interval in milliseconds, or -1 if the parent process has not asked for heartbeats
+    static long intervalFromProperties() {
+        return Long.getLong("dev.lukebemish.forkedtaskexecutor.heartbeat", -1);
+    }
+
+    interface Sender {
+        void send(ByteBuffer frame) throws IOException;
+    }
+
+    // Sends heartbeats from a daemon thread until the frames can no longer be written
+    static void start(long intervalMillis, Sender sender, IntSupplier queueDepth, IntSupplier running) {
+        var heartbeat = new Heartbeat();
+        var thread = new Thread(() -> {
+            try {
+                while (true) {
+                    sender.send(heartbeat.frame(queueDepth.getAsInt(), running.getAsInt()));
+                    Thread.sleep(intervalMillis);
+                }
+            } catch (Exception e) {
+                // The socket is closed, so the daemon is stopping
+            }
+        }, "ForkedTaskExecutor heartbeat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // What the heap held after the latest collection, which unlike current usage excludes garbage, or -1 if there has
+    // been none or the JVM does not report it
+    private long retained() {
+        try {
+            return retainedAfterGc();
+        } catch (LinkageError e) {
+            // The daemon's runtime does not include the jdk.management module
+            return -1;
+        }
+    }
+
+    private long retainedAfterGc() {
+        com.sun.management.GcInfo latest = null;
+        for (var collector : collectors) {
+            if (!(collector instanceof com.sun.management.GarbageCollectorMXBean)) {
+                return -1;
+            }
+            var info = ((com.sun.management.GarbageCollectorMXBean) collector).getLastGcInfo();
+            if (info != null && (latest == null || info.getEndTime() > latest.getEndTime())) {
+                latest = info;
+            }
+        }
+        if (latest == null) {
+            return -1;
+        }
+        long retained = 0;
+        var after = latest.getMemoryUsageAfterGc();
+        for (var pool : heapPools) {
+            var usage = after.get(pool.getName());
+            if (usage != null) {
+                retained += usage.getUsed();
+            }
+        }
+        return retained;
+    }
+
+    private ByteBuffer frame(int queueDepth, int running) {
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long gcCount = 0;
+        long gcTime = 0;
+        for (var collector : collectors) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcTime += Math.max(0, collector.getCollectionTime());
+        }
+        long retained = retained();
+        return ByteBuffer.allocate(64)
+            .putInt(-5)
+            .putLong(ManagementFactory.getRuntimeMXBean().getUptime())
+            .putLong(heap.getUsed())
+            .putLong(retained)
+            .putLong(heap.getMax())
+            .putLong(gcCount)
+            .putLong(gcTime)
+            .putInt(ManagementFactory.getThreadMXBean().getThreadCount())
+            .putInt(queueDepth)
+            .putInt(running)
+            .flip();
+    }
+}
@@ -0,0 +1,50 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Submissions waiting for a thread, in one queue per priority; lower numbers run first. The numbers are those the parent
+// process sends for each priority.
+final class Lanes {
+    static final int HIGH = 0;
+    static final int NORMAL = 1;
+    static final int LOW = 2;
+
+    private final Queue<Runnable> high = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> normal = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> low = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    void add(int priority, Runnable runnable) {
+        size.incrementAndGet();
+        switch (priority) {
+            case HIGH:
+                high.add(runnable);
+                break;
+            case LOW:
+                low.add(runnable);
+                break;
+            default:
+                normal.add(runnable);
+        }
+    }
+
+    Runnable poll() {
+        var next = high.poll();
+        if (next == null) {
+            next = normal.poll();
+        }
+        if (next == null) {
+            next = low.poll();
+        }
+        if (next != null) {
+            size.decrementAndGet();
+        }
+        return next;
+    }
+
+    int size() {
+        return size.get();
+    }
+}
@@ -1,57 +1,121 @@
 package dev.lukebemish.forkedtaskexecutor.runner;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public final class Main implements AutoCloseable {
     private static final boolean STACKTRACE = !Boolean.getBoolean("dev.lukebemish.forkedtaskexecutor.hidestacktrace");
 
-    private final ServerSocket socket;
-    private final ExecutorService executor = ExecutorUtils.newService();
-    private final Task task;
+    private final SocketChannel socket;
+    private final ExecutorService executor;
+    private final Lanes lanes = new Lanes();
+    private final SharedMemory sharedMemory = SharedMemory.fromProperties();
+    private final BufferPool bufferPool = new BufferPool();
+    // The main task, then any others the parent process asked for, indexed as submissions name them
+    private final Task[] tasks;
+    private final boolean[] pooled;
 
-    private Main(Task task) throws IOException {
-        this.task = task;
-        this.socket = new ServerSocket(0);
+    private Main(Task[] tasks, ExecutorService executor, SocketChannel socket) {
+        this.tasks = tasks;
+        this.executor = executor;
+        this.socket = socket;
+        this.pooled = new boolean[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            this.pooled[i] = takesPooledBuffers(tasks[i]);
+        }
+    }
+
+    // Inputs are only read into pooled buffers for tasks that take them, as copying them out again for run(byte[])
+    // would cost more than it saves
+    private static boolean takesPooledBuffers(Task task) {
+        try {
+            return task.getClass().getMethod("run", ByteBuffer.class, BufferPool.class).getDeclaringClass() != Task.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
+    // Must match the parent process's expectation of a daemon whose runtime cannot run the requested scheduler
+    private static final int UNSUPPORTED_EXIT_CODE = 2;
+
     private static final PrintStream OUT = System.out;
     private static final PrintStream ERR = System.err;
     private static final InputStream IN = System.in;
 
+    private static Task newTask(String name, String[] otherArgs) throws ReflectiveOperationException {
+        Class<?> taskClass = Class.forName(name, false, Main.class.getClassLoader());
+        if (!Task.class.isAssignableFrom(taskClass)) {
+            throw new IllegalArgumentException("Class " + name + " does not implement "+Task.class.getName());
+        }
+        Constructor<?> constructor = taskClass.getConstructor(String[].class);
+        return (Task) constructor.newInstance((Object) otherArgs);
+    }
+
     public static void main(String[] args) {
         try {
-            Class<?> taskClass = Class.forName(args[0], false, Main.class.getClassLoader());
-            if (!Task.class.isAssignableFrom(taskClass)) {
-                throw new IllegalArgumentException("Class " + args[0] + " does not implement "+Task.class.getName());
-            }
-            Constructor<?> constructor = taskClass.getConstructor(String[].class);
             String[] otherArgs = new String[args.length - 1];
             System.arraycopy(args, 1, otherArgs, 0, otherArgs.length);
-            var task = (Task) constructor.newInstance((Object) otherArgs);
+            List<Task> tasks = new ArrayList<>();
+            var task = newTask(args[0], otherArgs);
+            tasks.add(task);
+            // Further task classes share this JVM, and are told apart by their index in submissions
+            String additional = System.getProperty("dev.lukebemish.forkedtaskexecutor.tasks");
+            if (additional != null) {
+                for (var name : additional.split(",")) {
+                    tasks.add(newTask(name, otherArgs.clone()));
+                }
+            }
 
             System.setOut(task.replaceSystemOut(OUT));
             System.setErr(task.replaceSystemErr(ERR));
             System.setIn(task.replaceSystemIn(IN));
 
-            try (Main runner = new Main(task)) {
-                runner.run(task);
+            for (var each : tasks) {
+                each.warmUp();
+            }
+
+            ExecutorService executor;
+            try {
+                // Made before connecting, so that the parent process can tell why a daemon that never connected failed
+                executor = Schedulers.fromProperties();
+            } catch (UnsupportedOperationException e) {
+                logException(e);
+                System.exit(UNSUPPORTED_EXIT_CODE);
+                return;
+            }
+
+            try (Main runner = new Main(tasks.toArray(new Task[0]), executor, connect())) {
+                runner.run();
             }
             System.exit(0);
         } catch (Throwable t) {
@@ -60,13 +124,31 @@ public static void main(String[] args) {
         }
     }
 
-    private void run(Task task) throws IOException {
-        // This tells the parent process what port we're listening on
-        OUT.println(socket.getLocalPort());
-        var socket = this.socket.accept();
+    private static SocketChannel connect() throws IOException {
+        // The parent process listens on this address, and waits for us to connect
+        String address = System.getProperty("dev.lukebemish.forkedtaskexecutor.address");
+        if (address == null) {
+            throw new IllegalStateException("No address provided by parent process");
+        }
+        if (address.startsWith("unix:")) {
+            return SocketChannel.open(UnixDomainSocketAddress.of(address.substring("unix:".length())));
+        } else if (address.startsWith("tcp:")) {
+            int port = Integer.parseInt(address.substring("tcp:".length()));
+            var channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return channel;
+        }
+        throw new IllegalArgumentException("Unknown address " + address);
+    }
+
+    private void run() throws IOException {
         // Communication back to the parent is done through this handle, which ensures synchronization on the output stream.
-        var socketHandle = new SocketHandle(socket);
-        task.setupLifecycleWatcher(currentlyExecuting::get, () -> {
+        var socketHandle = new SocketHandle(socket, sharedMemory);
+        long heartbeatInterval = Heartbeat.intervalFromProperties();
+        if (heartbeatInterval > 0) {
+            Heartbeat.start(heartbeatInterval, socketHandle::writeHeartbeat, lanes::size, currentlyExecuting::get);
+        }
+        Supplier<Boolean> attemptShutdown = () -> {
             if (shutdown.get()) {
                 return true;
             }
@@ -88,7 +170,10 @@ private void run(Task task) throws IOException {
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
-        });
+        };
+        for (var task : tasks) {
+            task.setupLifecycleWatcher(currentlyExecuting::get, attemptShutdown);
+        }
         while (true) {
             int id = socketHandle.readId();
             if (id == -2) {
@@ -101,6 +186,49 @@ private void run(Task task) throws IOException {
                     socketHandle.writeShutdown();
                     break;
                 }
+                continue;
+            } else if (id == -3) {
+                // A chunk of a streamed input
+                int streamId = socketHandle.readInt();
+                int length = socketHandle.readInt();
+                var stream = length == -1 || length == -2 ? inputStreams.remove(streamId) : inputStreams.get(streamId);
+                if (length >= 0) {
+                    byte[] chunk = socketHandle.readBytes(length);
+                    if (stream != null) {
+                        stream.accept(chunk);
+                    }
+                } else if (stream != null) {
+                    if (length == -1) {
+                        stream.finish();
+                    } else {
+                        stream.abort(new IOException("Parent process failed to provide input"));
+                    }
+                }
+                continue;
+            } else if (id == -4) {
+                // The parent process has read chunks of a streamed result, and may be sent more
+                int streamId = socketHandle.readInt();
+                int chunks = socketHandle.readInt();
+                var stream = outputStreams.get(streamId);
+                if (stream != null) {
+                    stream.credit(chunks);
+                }
+                continue;
+            } else if (id == -5) {
+                // The parent process no longer wants the result of a submission
+                int cancelledId = socketHandle.readInt();
+                var execution = running.get(cancelledId);
+                if (execution != null) {
+                    execution.cancel();
+                }
+                continue;
+            } else if (id == -6) {
+                // A batch of submissions, each in the usual format
+                int count = socketHandle.readInt();
+                for (int i = 0; i < count; i++) {
+                    readSubmission(socketHandle.readInt(), socketHandle);
+                }
+                continue;
             } else if (id < 0) {
                 shutdown.set(true);
                 if (shutdownRequest.get() != null) {
@@ -110,34 +238,282 @@ private void run(Task task) throws IOException {
                 socketHandle.writeShutdown();
                 break;
             }
-            if (shutdownRequest.get() != null) {
-                shutdownRequest.get().accept(false);
+            readSubmission(id, socketHandle);
+        }
+    }
+
+    private void readSubmission(int id, SocketHandle socketHandle) throws IOException {
+        if (shutdownRequest.get() != null) {
+            shutdownRequest.get().accept(false);
+        }
+        int length = socketHandle.readInt();
+        long deadline = 0;
+        boolean hasDeadline = false;
+        int priority = Lanes.NORMAL;
+        int task = 0;
+        while (length == -3 || length == -4 || length == -5) {
+            if (length == -3) {
+                // A length of -3 means a timeout in nanoseconds follows, and then the actual length
+                hasDeadline = true;
+                deadline = System.nanoTime() + socketHandle.readLong();
+            } else if (length == -5) {
+                // A length of -5 means the index of the task to run follows, and then the actual length
+                task = socketHandle.readInt();
+                if (task < 0 || task >= tasks.length) {
+                    throw new IOException("Submission " + id + " is for unknown task " + task);
+                }
+            } else {
+                // A length of -4 means a priority follows, and then the actual length
+                priority = socketHandle.readByte();
             }
-            byte[] input = socketHandle.readBytes();
+            length = socketHandle.readInt();
+        }
+        if (length == -2) {
+            // A length of -2 means the input follows as chunks, and the result should be sent back as chunks
+            var input = new ChunkInputStream(chunks -> socketHandle.writeCredit(id, chunks));
+            var output = new ChunkOutputStream(new ChunkOutputStream.Sink() {
+                @Override
+                public void chunk(byte[] bytes, int length) throws IOException {
+                    socketHandle.writeChunk(id, bytes, length);
+                }
+
+                @Override
+                public void end() throws IOException {
+                    socketHandle.writeChunkEnd(id, -1);
+                }
+
+                @Override
+                public void abort() throws IOException {
+                    socketHandle.writeChunkEnd(id, -2);
+                }
+            });
+            inputStreams.put(id, input);
+            outputStreams.put(id, output);
+            executeStream(id, tasks[task], input, output, priority);
+        } else {
+            ByteBuffer input = socketHandle.readInput(length, pooled[task] ? bufferPool : null);
             // Submissions to the child process take the format ID, input bytes
-            execute(id, input, socketHandle);
-            currentlyExecuting.incrementAndGet();
+            execute(id, task, input, socketHandle, priority, hasDeadline, deadline);
         }
+        currentlyExecuting.incrementAndGet();
     }
 
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
     private final AtomicInteger currentlyExecuting = new AtomicInteger(0);
     private final AtomicReference<Consumer<Boolean>> shutdownRequest = new AtomicReference<>(null);
+    private final Map<Integer, ChunkInputStream> inputStreams = new ConcurrentHashMap<>();
+    private final Map<Integer, ChunkOutputStream> outputStreams = new ConcurrentHashMap<>();
+    private final Map<Integer, Execution> running = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "ForkedTaskExecutor deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private void execute(int id, byte[] input, SocketHandle socketHandle) {
+    // Each runnable handed to the executor runs whichever waiting submission has the highest priority once it gets a
+    // thread, so that priorities apply whatever the executor's own queueing
+    private void schedule(int priority, Runnable runnable) {
+        lanes.add(priority, runnable);
         executor.submit(() -> {
+            var next = lanes.poll();
+            if (next != null) {
+                next.run();
+            }
+        });
+    }
+
+    private void execute(int id, int task, ByteBuffer input, SocketHandle socketHandle, int priority, boolean hasDeadline, long deadline) {
+        var execution = new Execution(id, tasks[task], pooled[task], input, socketHandle, hasDeadline, deadline);
+        running.put(id, execution);
+        schedule(priority, execution);
+        if (hasDeadline) {
+            execution.expiry = deadlines.schedule(execution::expire, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // A submission the parent process may cancel, or that may have a deadline. Exactly one answer is sent for each
+    // submission: either its result, or a failure once it is cancelled or expires, which frees its slot straight away
+    // rather than once the task notices.
+    private final class Execution implements Runnable {
+        private final int id;
+        private final Task task;
+        private final boolean pooled;
+        private final ByteBuffer input;
+        private final SocketHandle socketHandle;
+        private final boolean hasDeadline;
+        private final long deadline;
+        private final AtomicBoolean answered = new AtomicBoolean();
+        private volatile ScheduledFuture<?> expiry;
+        // The thread running the task, guarded by this execution
+        private Thread thread;
+        // Reported to the parent process with the answer
+        private final long received = System.nanoTime();
+        private volatile boolean started;
+        private volatile long startedAt;
+        private volatile long answeredAt;
+        private volatile int waiting;
+
+        private Execution(int id, Task task, boolean pooled, ByteBuffer input, SocketHandle socketHandle, boolean hasDeadline, long deadline) {
+            this.id = id;
+            this.task = task;
+            this.pooled = pooled;
+            this.input = input;
+            this.socketHandle = socketHandle;
+            this.hasDeadline = hasDeadline;
+            this.deadline = deadline;
+        }
+
+        private boolean answer() {
+            if (!answered.compareAndSet(false, true)) {
+                return false;
+            }
+            answeredAt = System.nanoTime();
+            waiting = lanes.size();
+            running.remove(id);
+            currentlyExecuting.decrementAndGet();
+            var expiry = this.expiry;
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            return true;
+        }
+
+        private long queueNanos() {
+            return (started ? startedAt : answeredAt) - received;
+        }
+
+        private long runNanos() {
+            return started ? answeredAt - startedAt : 0;
+        }
+
+        // A task that has not started yet never will, as it has already been answered
+        private synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        private void cancel() throws IOException {
+            if (answer()) {
+                interrupt();
+                socketHandle.writeFailure(this);
+            }
+        }
+
+        private void expire() {
+            if (answer()) {
+                interrupt();
+                try {
+                    socketHandle.writeTimeout(this);
+                } catch (IOException e) {
+                    logException(e);
+                }
+            }
+        }
+
+        // Pooled buffers are given back once nothing will read them again; anything else is left to the garbage collector
+        private void release(ByteBuffer output) {
+            if (!pooled) {
+                return;
+            }
+            bufferPool.release(input);
+            if (output != null) {
+                bufferPool.release(output);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (answered.get()) {
+                    release(null);
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+            try {
+                runTask();
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    // An interrupt meant for this task must not reach the next one to use this thread
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private void runTask() {
+            if (hasDeadline && deadline - System.nanoTime() <= 0) {
+                // The submission expired while queued, so it never starts
+                expire();
+                release(null);
+                return;
+            }
+            startedAt = System.nanoTime();
+            started = true;
+            ByteBuffer output;
+            try {
+                output = pooled ? task.run(input, bufferPool) : ByteBuffer.wrap(task.run(input));
+            } catch (Throwable t) {
+                release(null);
+                if (!answer()) {
+                    // The submission was cancelled, so the failure is most likely the interrupt
+                    return;
+                }
+                logException(t);
+                try {
+                    socketHandle.writeFailure(this);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new RuntimeException(t);
+            }
+            if (!answer()) {
+                release(output);
+                return;
+            }
+            try {
+                if (sharedMemory != null && sharedMemory.shouldShare(output.remaining())) {
+                    socketHandle.writeSharedSuccess(this, sharedMemory.write("out-" + id, output));
+                    release(output);
+                } else {
+                    var result = output;
+                    socketHandle.writeSuccess(this, result, () -> release(result));
+                }
+            } catch (Throwable t) {
+                logException(t);
+                try {
+                    socketHandle.writeFailure(this);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    private void executeStream(int id, Task task, ChunkInputStream input, ChunkOutputStream output, int priority) {
+        schedule(priority, () -> {
             try {
-                byte[] output = task.run(input);
-                socketHandle.writeSuccess(id, output);
+                task.run(input, output);
+                output.close();
             } catch (Throwable t) {
                 logException(t);
                 try {
-                    socketHandle.writeFailure(id);
+                    output.abort();
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
                 throw new RuntimeException(t);
             } finally {
+                // Any input the task did not read is discarded
+                inputStreams.remove(id);
+                outputStreams.remove(id);
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    logException(e);
+                }
                 currentlyExecuting.decrementAndGet();
             }
         });
@@ -146,6 +522,7 @@ private void execute(int id, byte[] input, SocketHandle socketHandle) {
     @Override
     public void close() throws IOException, TimeoutException {
         socket.close();
+        deadlines.shutdownNow();
         executor.shutdownNow();
         try {
             if (!executor.awaitTermination(4000, TimeUnit.MILLISECONDS)) {
@@ -166,45 +543,133 @@ private static void logException(Throwable t) {
     }
 
     private static final class SocketHandle {
-        private final DataOutputStream output;
+        private final FrameWriter output;
         private final DataInputStream input;
+        private final SharedMemory sharedMemory;
+
+        private SocketHandle(SocketChannel socket, SharedMemory sharedMemory) {
+            this.output = new FrameWriter(socket, "ForkedTaskExecutor writer");
+            this.input = new DataInputStream(new BufferedInputStream(inputStream(socket)));
+            this.sharedMemory = sharedMemory;
+            this.output.start();
+        }
+
+        // Channels.newInputStream locks out writes to the channel on Java 17, so reads go straight to the channel
+        // instead.
+        private static InputStream inputStream(SocketChannel channel) {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    int read = read(single, 0, 1);
+                    return read < 0 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    Objects.checkFromIndexSize(off, len, b.length);
+                    if (len == 0) {
+                        return 0;
+                    }
+                    return channel.read(ByteBuffer.wrap(b, off, len));
+                }
+            };
+        }
+
+        // Frames are queued for the writer thread rather than written here, so task threads never block on the
+        // socket, and interrupting them cannot close it
+
+        // Every answer reports how many submissions were waiting for a thread, and how long this one waited and ran
+        private static ByteBuffer answerHeader(Execution execution, byte status, int extra) {
+            return ByteBuffer.allocate(25 + extra)
+                .putInt(execution.id)
+                .put(status)
+                .putInt(execution.waiting)
+                .putLong(execution.queueNanos())
+                .putLong(execution.runNanos());
+        }
+
+        void writeFailure(Execution execution) throws IOException {
+            output.write(answerHeader(execution, (byte) 0, 0).flip());
+        }
+
+        // A status of 2 means the submission's deadline passed before it finished
+        void writeTimeout(Execution execution) throws IOException {
+            output.write(answerHeader(execution, (byte) 2, 0).flip());
+        }
+
+        // The result, and whatever it shares memory with, must not be reused until the frame has been written
+        void writeSuccess(Execution execution, ByteBuffer result, Runnable onWritten) throws IOException {
+            output.write(answerHeader(execution, (byte) 1, 4).putInt(result.remaining()).flip(), result, onWritten);
+        }
+
+        void writeSharedSuccess(Execution execution, String name) throws IOException {
+            // Names are plain ASCII, so this matches what DataInput.readUTF expects
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            // A length of -1 means the result is in the named shared memory file
+            output.write(answerHeader(execution, (byte) 1, 6 + bytes.length).putInt(-1).putShort((short) bytes.length).put(bytes).flip());
+        }
 
-        private SocketHandle(Socket socket) throws IOException {
-            this.output = new DataOutputStream(socket.getOutputStream());
-            this.input = new DataInputStream(socket.getInputStream());
+        // The chunk belongs to the writer thread once queued
+        void writeChunk(int id, byte[] chunk, int length) throws IOException {
+            output.write(ByteBuffer.allocate(12).putInt(-3).putInt(id).putInt(length).flip(), ByteBuffer.wrap(chunk, 0, length));
         }
 
-        synchronized void writeFailure(int id) throws IOException {
-            output.writeInt(id);
-            output.writeBoolean(false);
-            output.flush();
+        // A length of -1 ends a stream, and -2 aborts it
+        void writeChunkEnd(int id, int length) throws IOException {
+            output.write(ByteBuffer.allocate(12).putInt(-3).putInt(id).putInt(length).flip());
         }
 
-        synchronized void writeSuccess(int id, byte[] result) throws IOException {
-            output.writeInt(id);
-            output.writeBoolean(true);
-            output.writeInt(result.length);
-            output.write(result);
-            output.flush();
+        void writeCredit(int id, int chunks) throws IOException {
+            output.write(ByteBuffer.allocate(12).putInt(-4).putInt(id).putInt(chunks).flip());
         }
 
-        synchronized void writeAskShutdown() throws IOException {
-            output.writeInt(-2);
-            output.flush();
+        void writeHeartbeat(ByteBuffer frame) throws IOException {
+            output.write(frame);
         }
 
-        synchronized void writeShutdown() throws IOException {
-            output.writeInt(-1);
-            output.flush();
+        void writeAskShutdown() throws IOException {
+            output.write(ByteBuffer.allocate(4).putInt(-2).flip());
+        }
+
+        // Nothing more may be written once this returns
+        void writeShutdown() throws IOException {
+            output.write(ByteBuffer.allocate(4).putInt(-1).flip());
+            output.finish();
         }
 
         int readId() throws IOException {
             return input.readInt();
         }
 
-        byte[] readBytes() throws IOException {
-            int length = input.readInt();
+        int readInt() throws IOException {
+            return input.readInt();
+        }
+
+        long readLong() throws IOException {
+            return input.readLong();
+        }
+
+        byte readByte() throws IOException {
+            return input.readByte();
+        }
+
+        byte[] readBytes(int length) throws IOException {
             return input.readNBytes(length);
         }
+
+        // Without a pool, inputs are read into arrays of exactly their length, which run(byte[]) can take as they are
+        ByteBuffer readInput(int length, BufferPool pool) throws IOException {
+            if (length == -1) {
+                String name = input.readUTF();
+                return Objects.requireNonNull(sharedMemory, "Parent sent a shared memory input, but shared memory is disabled").map(name);
+            }
+            if (pool != null) {
+                var buffer = pool.acquire(length);
+                input.readFully(buffer.array(), 0, length);
+                return buffer.limit(length);
+            }
+            return ByteBuffer.wrap(input.readNBytes(length));
+        }
     }
 }
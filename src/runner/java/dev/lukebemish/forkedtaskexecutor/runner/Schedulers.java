@@ -0,0 +1,35 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Builds the executor tasks run on, as chosen by the parent process.
+final class Schedulers {
+    private Schedulers() {}
+
+    static ExecutorService fromProperties() {
+        String scheduler = System.getProperty("dev.lukebemish.forkedtaskexecutor.scheduler", "DEFAULT");
+        int parallelism = Integer.getInteger("dev.lukebemish.forkedtaskexecutor.parallelism", -1);
+        if (parallelism < 1) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        switch (scheduler) {
+            case "DEFAULT":
+                return ExecutorUtils.newService(parallelism);
+            case "FIXED":
+                return Executors.newFixedThreadPool(parallelism);
+            case "WORK_STEALING":
+                return Executors.newWorkStealingPool(parallelism);
+            case "VIRTUAL_THREADS":
+                return ExecutorUtils.newVirtualService();
+            case "CALLER_RUNS":
+                // Once the queue is full, the thread reading submissions runs them itself, and so stops reading more
+                return new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(parallelism), new ThreadPoolExecutor.CallerRunsPolicy());
+            default:
+                throw new IllegalArgumentException("Unknown scheduler " + scheduler);
+        }
+    }
+}
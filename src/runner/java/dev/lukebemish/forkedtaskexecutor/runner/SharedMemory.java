@@ -0,0 +1,47 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The daemon's side of the memory-mapped files the parent process uses to pass payloads above a size threshold.
+final class SharedMemory {
+    private final Path directory;
+    private final int threshold;
+
+    private SharedMemory(Path directory, int threshold) {
+        this.directory = directory;
+        this.threshold = threshold;
+    }
+
+    // Returns null if the parent process has not enabled shared memory
+    static SharedMemory fromProperties() {
+        String directory = System.getProperty("dev.lukebemish.forkedtaskexecutor.sharedmemory");
+        if (directory == null) {
+            return null;
+        }
+        int threshold = Integer.getInteger("dev.lukebemish.forkedtaskexecutor.sharedmemorythreshold", 0);
+        return new SharedMemory(Path.of(directory), threshold);
+    }
+
+    boolean shouldShare(int length) {
+        return length > threshold;
+    }
+
+    // The mapping is read-only, and is released once the buffer is garbage collected; the parent process deletes the file
+    ByteBuffer map(String name) throws IOException {
+        try (var channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Copies the remaining bytes of the buffer, without moving its position
+    String write(String name, ByteBuffer data) throws IOException {
+        try (var channel = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, data.remaining()).put(data.duplicate());
+        }
+        return name;
+    }
+}
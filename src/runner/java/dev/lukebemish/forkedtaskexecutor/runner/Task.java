@@ -1,12 +1,60 @@
 package dev.lukebemish.forkedtaskexecutor.runner;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.function.Supplier;
 
 public interface Task {
     byte[] run(byte[] input) throws Exception;
 
+    /**
+     * Runs the task on an input that may be a read-only view of memory shared with the parent process, so that large
+     * inputs need not be copied. The buffer must not be used once this method returns. By default, this copies the
+     * input to an array, if it is not already backed by one, and calls {@link #run(byte[])}.
+     */
+    default byte[] run(ByteBuffer input) throws Exception {
+        if (input.hasArray() && input.arrayOffset() == 0 && input.position() == 0 && input.remaining() == input.array().length) {
+            return run(input.array());
+        }
+        byte[] bytes = new byte[input.remaining()];
+        input.get(bytes);
+        return run(bytes);
+    }
+
+    /**
+     * Runs the task on an input, returning a buffer whose remaining bytes are the result, so that a task may take its
+     * result from the daemon's buffer pool instead of allocating one for every submission. Inputs for tasks that
+     * override this method are themselves read into heap buffers from the pool, unless passed through shared memory.
+     * <p>
+     * The input belongs to the daemon, and must not be used once this method returns, except that it, or a view of
+     * it, may be returned as the result. A result taken from the pool passes back to the daemon, which releases it
+     * once it has been sent; any other result must not be modified once returned. By default, this calls
+     * {@link #run(ByteBuffer)}.
+     */
+    default ByteBuffer run(ByteBuffer input, BufferPool pool) throws Exception {
+        return ByteBuffer.wrap(run(input));
+    }
+
+    /**
+     * Runs the task on a streamed submission, reading input as the parent process sends it and writing the result
+     * back as it is produced; neither needs to fit in memory at once. Writing blocks while the parent process has not
+     * yet read enough of what was already written, and flushing sends what has been written so far. By default, this
+     * reads the whole input and calls {@link #run(byte[])}.
+     */
+    default void run(InputStream input, OutputStream output) throws Exception {
+        output.write(run(input.readAllBytes()));
+    }
+
+    /**
+     * Called once, after the standard streams are replaced and before the daemon connects to the parent process,
+     * which does not consider the daemon started until this returns. Tasks may use it to load classes, fill caches, or
+     * run representative work so that hot methods are compiled before the first submission. Time spent here counts
+     * towards the parent's startup timeout.
+     */
+    default void warmUp() throws Exception {}
+
     default PrintStream replaceSystemOut(PrintStream out) {
         return out;
     }
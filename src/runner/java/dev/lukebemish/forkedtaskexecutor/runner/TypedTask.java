@@ -0,0 +1,40 @@
+package dev.lukebemish.forkedtaskexecutor.runner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A task that takes and returns values rather than bytes, for use with
+ * {@code dev.lukebemish.forkedtaskexecutor.TypedForkedExecutor}. Inputs are decoded straight from the buffer they
+ * arrive in, and results encoded straight into a buffer from the daemon's {@link BufferPool}, so that no intermediate
+ * array is made for either. Subclasses pass their codecs, which must match the parent's, to the constructor.
+ *
+ * @param <I> the type of inputs
+ * @param <O> the type of results
+ */
+public abstract class TypedTask<I, O> implements Task {
+    private final Codec<I> inputCodec;
+    private final Codec<O> outputCodec;
+
+    protected TypedTask(Codec<I> inputCodec, Codec<O> outputCodec) {
+        this.inputCodec = inputCodec;
+        this.outputCodec = outputCodec;
+    }
+
+    /**
+     * {@return the result for a decoded input}
+     */
+    public abstract O apply(I input) throws Exception;
+
+    @Override
+    public byte[] run(byte[] input) throws Exception {
+        var output = Codecs.encode(outputCodec, apply(Codecs.decode(inputCodec, input)), null);
+        byte[] bytes = output.array();
+        return output.limit() == bytes.length ? bytes : Arrays.copyOf(bytes, output.limit());
+    }
+
+    @Override
+    public ByteBuffer run(ByteBuffer input, BufferPool pool) throws Exception {
+        return Codecs.encode(outputCodec, apply(inputCodec.decode(input)), pool);
+    }
+}
@@ -6,7 +6,11 @@
 final class ExecutorUtils {
     private ExecutorUtils() {}
 
-    static ExecutorService newService() {
+    static ExecutorService newService(int parallelism) {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    static ExecutorService newVirtualService() {
         return Executors.newVirtualThreadPerTaskExecutor();
     }
 }
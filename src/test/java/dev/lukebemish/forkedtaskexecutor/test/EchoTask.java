@@ -2,6 +2,10 @@
 
 import dev.lukebemish.forkedtaskexecutor.runner.Task;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 public class EchoTask implements Task {
     public EchoTask(String[] args) {}
 
@@ -10,4 +14,9 @@ public byte[] run(byte[] input) throws InterruptedException {
         Thread.sleep(200);
         return input;
     }
+
+    @Override
+    public void run(InputStream input, OutputStream output) throws IOException {
+        input.transferTo(output);
+    }
 }
@@ -0,0 +1,25 @@
+package dev.lukebemish.forkedtaskexecutor.test;
+
+import dev.lukebemish.forkedtaskexecutor.runner.Task;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HoardTask implements Task {
+    private final List<byte[]> hoard = new ArrayList<>();
+
+    public HoardTask(String[] args) {}
+
+    @Override
+    public byte[] run(byte[] input) {
+        // Keeps as many megabytes as the input has bytes, and collects so that the heap retained after collection grows
+        synchronized (hoard) {
+            for (int i = 0; i < input.length; i++) {
+                hoard.add(new byte[1024 * 1024]);
+            }
+        }
+        System.gc();
+        return Long.toString(ProcessHandle.current().pid()).getBytes(StandardCharsets.UTF_8);
+    }
+}
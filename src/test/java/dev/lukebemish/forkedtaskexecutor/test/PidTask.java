@@ -0,0 +1,14 @@
+package dev.lukebemish.forkedtaskexecutor.test;
+
+import dev.lukebemish.forkedtaskexecutor.runner.Task;
+
+import java.nio.charset.StandardCharsets;
+
+public class PidTask implements Task {
+    public PidTask(String[] args) {}
+
+    @Override
+    public byte[] run(byte[] input) {
+        return Long.toString(ProcessHandle.current().pid()).getBytes(StandardCharsets.UTF_8);
+    }
+}
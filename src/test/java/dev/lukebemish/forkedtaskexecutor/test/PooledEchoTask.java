@@ -0,0 +1,22 @@
+package dev.lukebemish.forkedtaskexecutor.test;
+
+import dev.lukebemish.forkedtaskexecutor.runner.BufferPool;
+import dev.lukebemish.forkedtaskexecutor.runner.Task;
+
+import java.nio.ByteBuffer;
+
+public class PooledEchoTask implements Task {
+    public PooledEchoTask(String[] args) {}
+
+    @Override
+    public byte[] run(byte[] input) {
+        return input;
+    }
+
+    @Override
+    public ByteBuffer run(ByteBuffer input, BufferPool pool) {
+        var output = pool.acquireDirect(input.remaining());
+        output.put(input).flip();
+        return output;
+    }
+}
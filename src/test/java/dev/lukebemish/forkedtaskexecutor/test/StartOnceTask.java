@@ -0,0 +1,19 @@
+package dev.lukebemish.forkedtaskexecutor.test;
+
+import dev.lukebemish.forkedtaskexecutor.runner.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class StartOnceTask implements Task {
+    // Only the first daemon started with a given marker file starts; any later one fails as it creates the task
+    public StartOnceTask(String[] args) throws IOException {
+        Files.createFile(Path.of(args[0]));
+    }
+
+    @Override
+    public byte[] run(byte[] input) {
+        return input;
+    }
+}
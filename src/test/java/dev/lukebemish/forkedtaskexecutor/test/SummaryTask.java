@@ -0,0 +1,25 @@
+package dev.lukebemish.forkedtaskexecutor.test;
+
+import dev.lukebemish.forkedtaskexecutor.runner.Codec;
+import dev.lukebemish.forkedtaskexecutor.runner.TypedTask;
+
+import java.util.Locale;
+
+public class SummaryTask extends TypedTask<String, SummaryTask.Summary> {
+    public record Summary(String upper, int length) {}
+
+    public SummaryTask(String[] args) {
+        super(Codec.utf8(), Codec.record(
+            (summary, output) -> {
+                output.writeUTF(summary.upper());
+                output.writeInt(summary.length());
+            },
+            input -> new Summary(input.readUTF(), input.readInt())
+        ));
+    }
+
+    @Override
+    public Summary apply(String input) {
+        return new Summary(input.toUpperCase(Locale.ROOT), input.length());
+    }
+}
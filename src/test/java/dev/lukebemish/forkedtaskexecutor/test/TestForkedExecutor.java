@@ -1,41 +1,653 @@
 package dev.lukebemish.forkedtaskexecutor.test;
 
+import dev.lukebemish.forkedtaskexecutor.Codec;
 import dev.lukebemish.forkedtaskexecutor.ForkedTaskExecutor;
+import dev.lukebemish.forkedtaskexecutor.ForkedTaskExecutorMetrics;
 import dev.lukebemish.forkedtaskexecutor.ForkedTaskExecutorSpec;
+import dev.lukebemish.forkedtaskexecutor.TypedForkedExecutor;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class TestForkedExecutor {
     @Test
     void testMain() {
+        testEcho(ForkedTaskExecutorSpec.Transport.AUTO);
+    }
+
+    @Test
+    void testTcpTransport() {
+        testEcho(ForkedTaskExecutorSpec.Transport.TCP);
+    }
+
+    @Test
+    void testSharedMemory() {
+        var spec = baseSpec()
+            .sharedMemoryThreshold(1024)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            byte[] small = new byte[] {1, 2, 3};
+            byte[] large = new byte[1024 * 1024];
+            new Random(0).nextBytes(large);
+            var smallOutput = executor.submitAsync(small);
+            var largeOutput = executor.submitAsync(large);
+            try {
+                assertArrayEquals(small, smallOutput.get());
+                assertArrayEquals(large, largeOutput.get());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Test
+    void testStreams() throws Exception {
+        try (var executor = new ForkedTaskExecutor(baseSpec().build())) {
+            byte[] input = new byte[10 * 1024 * 1024];
+            new Random(0).nextBytes(input);
+            try (var output = executor.submitStream(new ByteArrayInputStream(input))) {
+                assertArrayEquals(input, output.readAllBytes());
+            }
+            var publisher = new SubmissionPublisher<ByteBuffer>();
+            var output = executor.submitStream(publisher);
+            // The result must be read as the input is published, or the daemon will stop accepting input
+            var result = CompletableFuture.supplyAsync(() -> {
+                try (output) {
+                    return output.readAllBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            for (int i = 0; i < input.length; i += 4096) {
+                publisher.submit(ByteBuffer.wrap(input, i, 4096));
+            }
+            publisher.close();
+            assertArrayEquals(input, result.get());
+            // A buffer far larger than a chunk is split up rather than sent whole
+            var single = new SubmissionPublisher<ByteBuffer>();
+            var singleOutput = executor.submitStream(single);
+            var singleResult = CompletableFuture.supplyAsync(() -> {
+                try (singleOutput) {
+                    return singleOutput.readAllBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            single.submit(ByteBuffer.wrap(input));
+            single.close();
+            assertArrayEquals(input, singleResult.get());
+            // A publisher that fails fails the result
+            var failing = new SubmissionPublisher<ByteBuffer>();
+            var failingOutput = executor.submitStream(failing);
+            failing.submit(ByteBuffer.wrap(input));
+            failing.closeExceptionally(new IOException("Publisher failed"));
+            try (failingOutput) {
+                assertThrows(IOException.class, failingOutput::readAllBytes);
+            }
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        var spec = baseSpec()
+            .sharedMemoryThreshold(1024)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            var cancelled = executor.submitAsync(new byte[] {1});
+            var cancelledShared = executor.submitAsync(new byte[4096]);
+            assertTrue(cancelled.cancel(true));
+            assertTrue(cancelledShared.cancel(true));
+            assertTrue(cancelled.isCancelled());
+            // The daemon keeps working after dropping the cancelled submissions
+            assertArrayEquals(new byte[] {2}, executor.submitAsync(new byte[] {2}).get());
+        }
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        try (var executor = new ForkedTaskExecutor(baseSpec().build())) {
+            // The task sleeps for longer than the deadline
+            var expired = executor.submitAsync(new byte[] {1}, Duration.ofMillis(50));
+            var exception = assertThrows(ExecutionException.class, expired::get);
+            assertInstanceOf(TimeoutException.class, exception.getCause());
+            assertArrayEquals(new byte[] {2}, executor.submitAsync(new byte[] {2}, Duration.ofSeconds(30)).get());
+        }
+    }
+
+    @Test
+    void testInFlightLimit() throws Exception {
+        var failing = baseSpec()
+            .maxInFlight(1)
+            .admission(ForkedTaskExecutorSpec.Admission.FAIL)
+            .build();
+        try (var executor = new ForkedTaskExecutor(failing)) {
+            var first = executor.submitAsync(new byte[] {1});
+            var rejected = executor.submitAsync(new byte[] {2});
+            var exception = assertThrows(ExecutionException.class, rejected::get);
+            assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+            assertArrayEquals(new byte[] {1}, first.get());
+        }
+        var queueing = baseSpec()
+            .maxInFlight(2)
+            .admission(ForkedTaskExecutorSpec.Admission.QUEUE)
+            .adaptiveConcurrency(true)
+            .build();
+        try (var executor = new ForkedTaskExecutor(queueing)) {
+            testEcho(executor);
+        }
+        // The metrics listener runs on the thread reading results, while the answered submission still holds its place
+        var executorRef = new AtomicReference<ForkedTaskExecutor>();
+        var fromListener = new CompletableFuture<Future<byte[]>>();
+        var blocking = baseSpec()
+            .maxInFlight(1)
+            .metricsListener((outcome, roundTrip, queue, run) -> {
+                if (!fromListener.isDone()) {
+                    fromListener.complete(executorRef.get().submitAsync(new byte[] {2}));
+                }
+            })
+            .build();
+        try (var executor = new ForkedTaskExecutor(blocking)) {
+            executorRef.set(executor);
+            assertArrayEquals(new byte[] {1}, executor.submitAsync(new byte[] {1}).get(10, TimeUnit.SECONDS));
+            assertArrayEquals(new byte[] {2}, fromListener.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testSchedulers() throws Exception {
+        for (var scheduler : new ForkedTaskExecutorSpec.Scheduler[] {ForkedTaskExecutorSpec.Scheduler.FIXED, ForkedTaskExecutorSpec.Scheduler.WORK_STEALING, ForkedTaskExecutorSpec.Scheduler.CALLER_RUNS}) {
+            var spec = baseSpec()
+                .scheduler(scheduler)
+                .parallelism(2)
+                .build();
+            try (var executor = new ForkedTaskExecutor(spec)) {
+                testEcho(executor);
+                var low = executor.submitAsync(new byte[] {1}, ForkedTaskExecutor.Priority.LOW);
+                var high = executor.submitAsync(new byte[] {2}, Duration.ofSeconds(30), ForkedTaskExecutor.Priority.HIGH);
+                assertArrayEquals(new byte[] {1}, low.get());
+                assertArrayEquals(new byte[] {2}, high.get());
+            }
+        }
+        var spec = baseSpec()
+            .scheduler(ForkedTaskExecutorSpec.Scheduler.FIXED)
+            .parallelism(1)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            // Each submission takes 200ms on the daemon's one thread, so the others wait behind the first
+            var first = executor.submitAsync(new byte[] {0});
+            List<Future<byte[]>> lows = new ArrayList<>();
+            for (byte i = 1; i <= 3; i++) {
+                lows.add(executor.submitAsync(new byte[] {i}, ForkedTaskExecutor.Priority.LOW));
+            }
+            var high = executor.submitAsync(new byte[] {4}, ForkedTaskExecutor.Priority.HIGH);
+            assertArrayEquals(new byte[] {4}, high.get());
+            for (var low : lows) {
+                assertFalse(low.isDone());
+            }
+            assertArrayEquals(new byte[] {0}, first.get());
+            for (byte i = 1; i <= 3; i++) {
+                assertArrayEquals(new byte[] {i}, lows.get(i - 1).get());
+            }
+        }
+    }
+
+    @Test
+    void testDaemonThreads() {
+        try (var executor = new ForkedTaskExecutor(baseSpec().build())) {
+            testEcho(executor);
+            // Virtual threads are not listed among these
+            Set<String> platformThreads = new HashSet<>();
+            for (var thread : Thread.getAllStackTraces().keySet()) {
+                platformThreads.add(thread.getName());
+            }
+            // Output is read from pipes, which would hold a virtual thread's carrier, so it is always read on platform threads
+            assertTrue(platformThreads.contains("ForkedTaskExecutor stdout"));
+            assertTrue(platformThreads.contains("ForkedTaskExecutor stderr"));
+            // Results are read on a virtual thread where the JVM supports them
+            assertEquals(Runtime.version().feature() < 21, platformThreads.contains("ForkedTaskExecutor listener"));
+        }
+    }
+
+    @Test
+    void testMetrics() {
+        var notified = new AtomicInteger();
+        var spec = baseSpec()
+            .metricsListener((outcome, roundTrip, queue, run) -> notified.incrementAndGet())
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            testEcho(executor);
+            var metrics = executor.metrics();
+            assertEquals(10, metrics.submitted());
+            assertEquals(10, metrics.count(ForkedTaskExecutorMetrics.Outcome.SUCCESS));
+            assertEquals(0, metrics.inFlight());
+            assertEquals(10, notified.get());
+            // The task sleeps for 200ms
+            assertTrue(metrics.runTime().valueAtPercentile(50) >= 150_000_000L);
+            assertTrue(metrics.roundTrip().max() >= metrics.runTime().max());
+            assertTrue(metrics.bytesSent() > 0 && metrics.bytesReceived() > 0);
+        }
+        // Submissions still in flight when the executor stops count as failed
+        var executor = new ForkedTaskExecutor(spec);
+        var pending = executor.submitAsync(new byte[] {1});
+        executor.close();
+        assertThrows(ExecutionException.class, pending::get);
+        assertEquals(1, executor.metrics().count(ForkedTaskExecutorMetrics.Outcome.FAILURE));
+        assertEquals(0, executor.metrics().inFlight());
+    }
+
+    @Test
+    void testStartAsync() throws Exception {
+        var spec = baseSpec()
+            .startupTimeout(Duration.ofSeconds(30))
+            .build();
+        try (var executor = ForkedTaskExecutor.startAsync(spec).get()) {
+            testEcho(executor);
+        }
+    }
+
+    @Test
+    void testClassDataSharing(@TempDir Path directory) throws Exception {
+        var archives = directory.resolve("archives");
+        var classpath = jarredClasspath(directory.resolve("jars"));
+        var spec = baseSpec(classpath)
+            .taskClass(PidTask.class.getName())
+            .classDataSharingDirectory(archives)
+            .build();
+        // The first daemon records an archive as it exits
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            executor.submit(new byte[0]);
+        }
+        List<Path> files;
+        try (var stream = Files.list(archives)) {
+            files = stream.toList();
+        }
+        // Neither the lock nor the unfinished recording is left behind
+        assertEquals(1, files.size(), files.toString());
+        var archive = files.get(0);
+        assertTrue(archive.getFileName().toString().endsWith(".jsa"));
+        // The second starts from it
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            long pid = Long.parseLong(new String(executor.submit(new byte[0]), StandardCharsets.UTF_8));
+            var arguments = ProcessHandle.of(pid).orElseThrow().info().arguments().orElseThrow();
+            assertTrue(Arrays.asList(arguments).contains("-XX:SharedArchiveFile=" + archive), Arrays.toString(arguments));
+        }
+        // A daemon with more task classes loads classes the first did not, so it records an archive of its own
+        var more = baseSpec(classpath)
+            .taskClass(PidTask.class.getName())
+            .addTaskClass(EchoTask.class.getName())
+            .classDataSharingDirectory(archives)
+            .build();
+        try (var executor = new ForkedTaskExecutor(more)) {
+            long pid = Long.parseLong(new String(executor.submit(new byte[0]), StandardCharsets.UTF_8));
+            var arguments = ProcessHandle.of(pid).orElseThrow().info().arguments().orElseThrow();
+            assertFalse(Arrays.asList(arguments).contains("-XX:SharedArchiveFile=" + archive), Arrays.toString(arguments));
+        }
+        try (var stream = Files.list(archives)) {
+            assertEquals(2, stream.count());
+        }
+        // Changing a jar makes a new archive be recorded, which replaces the one for the old jar
+        var jar = Path.of(classpath.split(File.pathSeparator)[0]);
+        Files.setLastModifiedTime(jar, FileTime.from(Files.getLastModifiedTime(jar).toInstant().plusSeconds(1)));
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            executor.submit(new byte[0]);
+        }
+        try (var stream = Files.list(archives)) {
+            files = stream.toList();
+        }
+        assertEquals(2, files.size(), files.toString());
+        assertFalse(files.contains(archive), "Archive for the old jar was not deleted");
+    }
+
+    @Test
+    void testOutputSink() throws Exception {
+        var output = new StringBuffer();
+        var spec = baseSpec()
+            // The daemon logs the collector it uses to standard output as it starts
+            .addJvmOption("-Xlog:gc")
+            .outputSink((pid, stream, bytes, offset, length) -> {
+                if (stream == ForkedTaskExecutorSpec.OutputSink.Stream.STDOUT) {
+                    output.append(new String(bytes, offset, length, StandardCharsets.UTF_8));
+                }
+            })
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            testEcho(executor);
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!output.toString().contains("Using") && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+        assertTrue(output.toString().contains("Using"), "Daemon output was not passed to the sink");
+        var failing = baseSpec()
+            .addJvmOption("-Xlog:gc")
+            .outputSink((pid, stream, bytes, offset, length) -> {
+                throw new IOException("Sink failed");
+            })
+            .build();
+        var executor = new ForkedTaskExecutor(failing);
+        // Output keeps being drained after the sink fails, and the failure is reported on close
+        testEcho(executor);
+        var exception = assertThrows(UncheckedIOException.class, executor::close);
+        assertTrue(Arrays.stream(exception.getCause().getSuppressed()).anyMatch(t -> "Sink failed".equals(t.getMessage())));
+    }
+
+    @Test
+    void testTaggedOutput() {
+        var spec = baseSpec()
+            .addJvmOption("-Xlog:gc")
+            .tagOutput(true)
+            .build();
+        var captured = new ByteArrayOutputStream();
+        var out = System.out;
+        System.setOut(new PrintStream(captured, true));
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            testEcho(executor);
+        } finally {
+            System.setOut(out);
+        }
+        var lines = captured.toString(StandardCharsets.UTF_8).lines().filter(line -> line.contains("Using")).toList();
+        assertFalse(lines.isEmpty(), "Daemon output was not forwarded");
+        for (var line : lines) {
+            assertTrue(line.matches("\\[\\d+] .*"), line);
+        }
+        assertThrows(IllegalArgumentException.class, () -> baseSpec().output(ForkedTaskExecutorSpec.Output.RAW).tagOutput(true).build());
+    }
+
+    @Test
+    void testResultCache(@TempDir Path directory) throws Exception {
+        var spec = baseSpec()
+            .resultCacheSize(1024)
+            .resultCacheDirectory(directory)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            assertArrayEquals(new byte[] {1}, executor.submit(new byte[] {1}));
+            var cached = executor.submitAsync(new byte[] {1});
+            assertTrue(cached.isDone(), "Repeated input was sent to the daemon");
+            assertArrayEquals(new byte[] {1}, cached.get());
+            assertEquals(1, executor.metrics().cacheHits());
+            assertEquals(1, executor.metrics().submitted());
+        }
+        // A later executor finds the result on disk, once it has been written
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            while (executor.metrics().cacheHits() == 0 && System.nanoTime() < deadline) {
+                assertArrayEquals(new byte[] {1}, executor.submit(new byte[] {1}));
+            }
+            assertTrue(executor.metrics().cacheHits() > 0, "Result was not cached on disk");
+        }
+        // The directory is kept within its size by deleting results
+        var bounded = directory.resolve("bounded");
+        var boundedSpec = baseSpec()
+            .resultCacheDirectory(bounded)
+            .resultCacheDirectorySize(4)
+            .build();
+        try (var executor = new ForkedTaskExecutor(boundedSpec)) {
+            List<byte[]> inputs = new ArrayList<>();
+            for (byte i = 0; i < 10; i++) {
+                inputs.add(new byte[] {i});
+            }
+            for (var output : executor.submitAll(inputs)) {
+                output.get();
+            }
+        }
+        // Results are written to disk in the background
+        ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS);
+        try (var files = Files.list(bounded)) {
+            long results = files.filter(file -> !file.getFileName().toString().contains(".")).count();
+            assertTrue(results > 0 && results <= 4, results + " results on disk");
+        }
+        assertThrows(IllegalArgumentException.class, () -> baseSpec().resultCacheDirectorySize(0).build());
+    }
+
+    @Test
+    void testDeduplicate() throws Exception {
+        var spec = baseSpec()
+            .deduplicate(true)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            // The task sleeps for 200ms, so these are all in flight together
+            @SuppressWarnings("unchecked") Future<byte[]>[] outputs = new Future[5];
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = executor.submitAsync(new byte[] {1});
+            }
+            var other = executor.submitAsync(new byte[] {2});
+            var cancelled = executor.submitAsync(new byte[] {1});
+            assertTrue(cancelled.cancel(true));
+            for (var output : outputs) {
+                assertArrayEquals(new byte[] {1}, output.get());
+            }
+            assertArrayEquals(new byte[] {2}, other.get());
+            assertEquals(2, executor.metrics().submitted());
+            assertEquals(5, executor.metrics().deduplicated());
+        }
+    }
+
+    @Test
+    void testSubmitAll() throws Exception {
+        try (var executor = new ForkedTaskExecutor(baseSpec().build())) {
+            List<byte[]> inputs = new ArrayList<>();
+            for (byte i = 0; i < 10; i++) {
+                inputs.add(new byte[] {i});
+            }
+            // Too large to be sent as part of the batch
+            byte[] large = new byte[64 * 1024];
+            new Random(0).nextBytes(large);
+            inputs.add(large);
+            var outputs = executor.submitAll(inputs);
+            assertEquals(inputs.size(), outputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                assertArrayEquals(inputs.get(i), outputs.get(i).get());
+            }
+        }
+    }
+
+    @Test
+    void testPooledBuffers() throws Exception {
+        var spec = baseSpec()
+            .taskClass(PooledEchoTask.class.getName())
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            var random = new Random(0);
+            // Enough submissions that the daemon reuses buffers released by earlier ones
+            for (int i = 0; i < 100; i++) {
+                byte[] bytes = new byte[random.nextInt(8192)];
+                random.nextBytes(bytes);
+                var input = ByteBuffer.allocateDirect(bytes.length + 2).position(1).put(bytes).flip().position(1);
+                var output = executor.submitAsync(input);
+                assertEquals(1, input.position());
+                assertArrayEquals(bytes, output.get());
+            }
+        }
+    }
+
+    @Test
+    void testHeartbeat() throws Exception {
+        var spec = baseSpec()
+            .heartbeatInterval(Duration.ofMillis(50))
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (executor.health() == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            var health = executor.health();
+            assertNotNull(health);
+            assertTrue(health.heapUsed() > 0);
+            assertTrue(health.threadCount() > 0);
+            assertTrue(health.heapFraction() >= 0 && health.heapFraction() <= 1);
+            assertTrue(health.gcFraction() >= 0 && health.gcFraction() <= 1);
+            var first = health;
+            while (executor.health() == first && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // Heartbeats keep arriving for as long as the daemon runs
+            assertNotSame(first, executor.health());
+        }
+    }
+
+    @Test
+    void testTypedExecutor() throws Exception {
+        var spec = baseSpec()
+            .taskClass(SummaryTask.class.getName())
+            .build();
+        Codec<SummaryTask.Summary> summaries = Codec.record(
+            (summary, output) -> {
+                output.writeUTF(summary.upper());
+                output.writeInt(summary.length());
+            },
+            input -> new SummaryTask.Summary(input.readUTF(), input.readInt())
+        );
+        try (var executor = new TypedForkedExecutor<>(new ForkedTaskExecutor(spec), Codec.utf8(), summaries)) {
+            assertEquals(new SummaryTask.Summary("H\u00c9LLO", 5), executor.submit("h\u00e9llo"));
+            // Larger than the daemon's first guess at the result's size, so encoded again into a larger buffer
+            var large = "x".repeat(1000);
+            assertEquals(new SummaryTask.Summary("X".repeat(1000), 1000), executor.submitAsync(large).get());
+        }
+        // Strings are sized exactly, counting a surrogate pair as four bytes
+        assertEquals(10, Codec.utf8().sizeHint("h\u00e9llo\ud83d\ude00"));
+        try (var executor = new TypedForkedExecutor<>(new ForkedTaskExecutor(baseSpec().build()), Codec.bytes(), Codec.bytes())) {
+            assertArrayEquals(new byte[] {1, 2, 3}, executor.submit(new byte[] {1, 2, 3}));
+        }
+    }
+
+    @Test
+    void testAdditionalTaskClasses() throws Exception {
+        var spec = baseSpec()
+            .addTaskClass(PidTask.class.getName())
+            .deduplicate(true)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            var pids = executor.task(PidTask.class.getName());
+            // The same input to different task classes is neither deduplicated nor answered by the wrong task
+            var echoed = executor.submitAsync(new byte[] {1});
+            var pid = pids.submitAsync(new byte[] {1});
+            assertArrayEquals(new byte[] {1}, echoed.get());
+            assertArrayEquals(new byte[] {1}, executor.task(EchoTask.class.getName()).submit(new byte[] {1}));
+            String first = new String(pid.get(), StandardCharsets.UTF_8);
+            assertEquals(first, new String(pids.submit(new byte[] {2}), StandardCharsets.UTF_8));
+            assertEquals(0, executor.metrics().deduplicated());
+            assertThrows(IllegalArgumentException.class, () -> executor.task(SummaryTask.class.getName()));
+            // Buffers and streams reach the handle's task class as well
+            assertEquals(first, new String(pids.submitAsync(ByteBuffer.wrap(new byte[] {3})).get(), StandardCharsets.UTF_8));
+            try (var output = pids.submitStream(new ByteArrayInputStream(new byte[] {4}))) {
+                assertEquals(first, new String(output.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            var publisher = new SubmissionPublisher<ByteBuffer>();
+            var published = pids.submitStream(publisher);
+            publisher.submit(ByteBuffer.wrap(new byte[] {5}));
+            publisher.close();
+            try (published) {
+                assertEquals(first, new String(published.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        // Without deduplication, small inputs are batched, and each submission in a batch names its task class
+        var batching = baseSpec()
+            .addTaskClass(PidTask.class.getName())
+            .build();
+        try (var executor = new ForkedTaskExecutor(batching)) {
+            var pids = executor.task(PidTask.class.getName()).submitAll(List.of(new byte[] {1}, new byte[] {2}));
+            var echoes = executor.submitAll(List.of(new byte[] {1}, new byte[] {2}));
+            long pid = Long.parseLong(new String(pids.get(0).get(), StandardCharsets.UTF_8));
+            assertEquals(pid, Long.parseLong(new String(pids.get(1).get(), StandardCharsets.UTF_8)));
+            assertArrayEquals(new byte[] {1}, echoes.get(0).get());
+            assertArrayEquals(new byte[] {2}, echoes.get(1).get());
+        }
+    }
+
+    private static ForkedTaskExecutorSpec.Builder baseSpec() {
+        return baseSpec(System.getProperty("forkedtaskexecutor.test.daemonclasspath"));
+    }
+
+    private static ForkedTaskExecutorSpec.Builder baseSpec(String classpath) {
         var jvmExecutable = ProcessHandle.current()
             .info()
             .command()
             .orElse(null);
         assertNotNull(jvmExecutable, "JVM executable not found");
-        var spec = ForkedTaskExecutorSpec.builder()
+        return ForkedTaskExecutorSpec.builder()
             .taskClass(EchoTask.class.getName())
             .javaExecutable(jvmExecutable)
             .addJvmOption("-classpath")
-            .addJvmOption(System.getProperty("forkedtaskexecutor.test.daemonclasspath"))
-            .build();
-        try (var executor = new ForkedTaskExecutor(spec)) {
-            byte count = 10;
-            @SuppressWarnings("unchecked") Future<byte[]>[] outputs = new Future[count];
-            for (byte i = 0; i < 10; i++) {
-                outputs[i] = executor.submitAsync(new byte[] {i});
+            .addJvmOption(classpath);
+    }
+
+    // The daemon's classpath with each directory packed into a jar, as the JVM will only archive classes from jars
+    private static String jarredClasspath(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<String> entries = new ArrayList<>();
+        for (var entry : System.getProperty("forkedtaskexecutor.test.daemonclasspath").split(File.pathSeparator)) {
+            var path = Path.of(entry);
+            if (!Files.isDirectory(path)) {
+                entries.add(entry);
+                continue;
             }
-            for (byte i = 0; i < 10; i++) {
-                try {
-                    byte[] output = outputs[i].get();
-                    assertArrayEquals(new byte[] {i}, output);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            var jar = directory.resolve(entries.size() + ".jar");
+            try (var output = new JarOutputStream(Files.newOutputStream(jar)); var files = Files.walk(path)) {
+                for (var file : files.filter(Files::isRegularFile).toList()) {
+                    output.putNextEntry(new JarEntry(path.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, output);
+                    output.closeEntry();
                 }
             }
+            entries.add(jar.toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static void testEcho(ForkedTaskExecutorSpec.Transport transport) {
+        var spec = baseSpec()
+            .transport(transport)
+            .build();
+        try (var executor = new ForkedTaskExecutor(spec)) {
+            testEcho(executor);
+        }
+    }
+
+    private static void testEcho(ForkedTaskExecutor executor) {
+        byte count = 10;
+        @SuppressWarnings("unchecked") Future<byte[]>[] outputs = new Future[count];
+        for (byte i = 0; i < 10; i++) {
+            outputs[i] = executor.submitAsync(new byte[] {i});
+        }
+        for (byte i = 0; i < 10; i++) {
+            try {
+                byte[] output = outputs[i].get();
+                assertArrayEquals(new byte[] {i}, output);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 }
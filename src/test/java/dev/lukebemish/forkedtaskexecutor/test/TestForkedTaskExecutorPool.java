@@ -0,0 +1,284 @@
+package dev.lukebemish.forkedtaskexecutor.test;
+
+import dev.lukebemish.forkedtaskexecutor.ForkedTaskExecutorPool;
+import dev.lukebemish.forkedtaskexecutor.ForkedTaskExecutorPoolSpec;
+import dev.lukebemish.forkedtaskexecutor.ForkedTaskExecutorSpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestForkedTaskExecutorPool {
+    @Test
+    void testPool() throws InterruptedException {
+        var spec = executorSpec();
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(spec)
+            .minSize(1)
+            .maxSize(3)
+            .growthThreshold(1)
+            .idleTimeout(Duration.ofMillis(100))
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(poolSpec)) {
+            assertEquals(1, pool.size());
+            byte count = 40;
+            @SuppressWarnings("unchecked") Future<byte[]>[] outputs = new Future[count];
+            for (byte i = 0; i < count; i++) {
+                outputs[i] = pool.submitAsync(new byte[] {i});
+                Thread.sleep(20);
+            }
+            for (byte i = 0; i < count; i++) {
+                try {
+                    byte[] output = outputs[i].get();
+                    assertArrayEquals(new byte[] {i}, output);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            assertTrue(pool.size() <= 3, "Pool grew past its maximum size");
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (pool.size() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, pool.size());
+        }
+    }
+
+    @Test
+    void testReplacement() throws Exception {
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(executorSpec(PidTask.class))
+            .minSize(1)
+            .maxSize(1)
+            .maxTasksPerChild(5)
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(poolSpec)) {
+            byte count = 20;
+            @SuppressWarnings("unchecked") Future<byte[]>[] outputs = new Future[count];
+            for (byte i = 0; i < count; i++) {
+                outputs[i] = pool.submitAsync(new byte[] {i});
+                Thread.sleep(20);
+            }
+            // Every submission is accepted while children are swapped out, and more than one child answers them
+            Set<String> pids = new HashSet<>();
+            for (byte i = 0; i < count; i++) {
+                pids.add(new String(outputs[i].get(), StandardCharsets.UTF_8));
+            }
+            assertTrue(pids.size() > 1, "No child was replaced");
+        }
+        var builder = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(executorSpec());
+        assertThrows(IllegalArgumentException.class, () -> builder.maxChildAge(Duration.ZERO).build());
+        assertThrows(IllegalArgumentException.class, () -> builder.maxChildAge(Duration.ofSeconds(-1)).build());
+    }
+
+    @Test
+    void testKeyAffinity() throws Exception {
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(executorSpec(PidTask.class))
+            .minSize(3)
+            .maxSize(3)
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(poolSpec)) {
+            Map<String, String> children = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                var key = "key-" + i;
+                children.put(key, new String(pool.submitAsync(key, new byte[0]).get(), StandardCharsets.UTF_8));
+            }
+            // Every submission with a key goes to the same child, and keys are spread across children
+            for (int i = 0; i < 20; i++) {
+                var key = "key-" + i;
+                assertEquals(children.get(key), new String(pool.submitAsync(key, new byte[0]).get(), StandardCharsets.UTF_8));
+            }
+            assertTrue(new HashSet<>(children.values()).size() > 1);
+        }
+    }
+
+    @Test
+    void testKeyAffinityAcrossReplacement() throws Exception {
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(executorSpec(PidTask.class))
+            .minSize(3)
+            .maxSize(3)
+            .maxTasksPerChild(25)
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(poolSpec)) {
+            // The first round is too short for any child to be replaced, so it shows which keys share a child
+            Map<String, String> groups = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                var key = "key-" + i;
+                groups.put(key, new String(pool.submitAsync(key, new byte[0]).get(), StandardCharsets.UTF_8));
+            }
+            // As children are replaced, each successor answers only keys its predecessor did, so no key joins another's
+            Map<String, String> answered = new HashMap<>();
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 20; i++) {
+                    var key = "key-" + i;
+                    var pid = new String(pool.submitAsync(key, new byte[0]).get(), StandardCharsets.UTF_8);
+                    var previous = answered.putIfAbsent(pid, groups.get(key));
+                    assertEquals(previous == null ? groups.get(key) : previous, groups.get(key), key + " moved to another child's keys");
+                }
+                // Leaves time for successors to start
+                Thread.sleep(100);
+            }
+            assertTrue(answered.size() > new HashSet<>(groups.values()).size(), "No child was replaced");
+        }
+    }
+
+    @Test
+    void testHeapPressure() throws Exception {
+        var recycling = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(hoardingSpec())
+            .idleTimeout(Duration.ofMillis(100))
+            .heapRecycleThreshold(0.25)
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(recycling)) {
+            String first = new String(pool.submit(new byte[0]), StandardCharsets.UTF_8);
+            // Once a heartbeat reports the child holding most of its heap, it is replaced
+            assertTrue(answeredByAnother(pool, first), "Child over the recycle threshold was not replaced");
+        }
+        var collecting = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(hoardingSpec())
+            .idleTimeout(Duration.ofMillis(100))
+            .gcRecycleThreshold(0.05)
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(collecting)) {
+            String first = new String(pool.submit(new byte[0]), StandardCharsets.UTF_8);
+            // Each submission forces a full collection, so the child soon spends much of its time collecting
+            assertTrue(answeredByAnother(pool, first), "Child over the garbage collection threshold was not replaced");
+        }
+        var holding = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(hoardingSpec())
+            .maxSize(2)
+            .growthThreshold(100)
+            .idleTimeout(Duration.ofSeconds(60))
+            .heapHoldBackThreshold(0.25)
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(holding)) {
+            String first = new String(pool.submit(new byte[0]), StandardCharsets.UTF_8);
+            // A child over the hold-back threshold is sent nothing while another is below it, so one is started
+            assertTrue(answeredByAnother(pool, first), "Child over the hold-back threshold was not held back");
+            assertEquals(2, pool.size());
+        }
+    }
+
+    @Test
+    void testDeduplicate() throws Exception {
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(baseSpec(EchoTask.class)
+                .deduplicate(true)
+                .build())
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(poolSpec)) {
+            // The task sleeps for 200ms, so the first is still in flight when the array is reused for an input with
+            // the same hash code
+            byte[] input = {0, 31};
+            var first = pool.submitAsync(input);
+            var duplicate = pool.submitAsync(new byte[] {0, 31});
+            input[0] = 1;
+            input[1] = 0;
+            var second = pool.submitAsync(input);
+            assertArrayEquals(new byte[] {0, 31}, first.get());
+            assertArrayEquals(new byte[] {0, 31}, duplicate.get());
+            assertArrayEquals(new byte[] {1, 0}, second.get());
+            assertEquals(1, pool.deduplicated());
+        }
+    }
+
+    @Test
+    void testResultCache() throws Exception {
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(baseSpec(EchoTask.class)
+                .resultCacheSize(1024)
+                .build())
+            .build();
+        try (var pool = new ForkedTaskExecutorPool(poolSpec)) {
+            assertArrayEquals(new byte[] {1}, pool.submit(new byte[] {1}));
+            var cached = pool.submitAsync(new byte[] {1});
+            assertTrue(cached.isDone(), "Repeated input was sent to a child");
+            assertArrayEquals(new byte[] {1}, cached.get());
+            assertEquals(1, pool.cacheHits());
+        }
+    }
+
+    @Test
+    void testFailedStart(@TempDir Path directory) throws Exception {
+        var poolSpec = ForkedTaskExecutorPoolSpec.builder()
+            .executorSpec(baseSpec(StartOnceTask.class)
+                .addProgramOption(directory.resolve("started").toString())
+                .deduplicate(true)
+                .build())
+            .maxTasksPerChild(1)
+            .build();
+        var pool = new ForkedTaskExecutorPool(poolSpec);
+        assertArrayEquals(new byte[] {0}, pool.submit(new byte[] {0}));
+        // The first child is retired after one task, and no successor can start
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (pool.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, pool.size());
+        // Each submission waits for a child to be started for it, which fails; an identical submission made after a
+        // failed one is tried again rather than left waiting on it
+        for (int i = 0; i < 2; i++) {
+            assertThrows(ExecutionException.class, () -> pool.submitAsync(new byte[] {1}).get(30, TimeUnit.SECONDS));
+        }
+        // A failure to start a child fails the returned future, rather than being thrown by the submission
+        var keyed = pool.submitAsync("key", new byte[] {2});
+        assertThrows(ExecutionException.class, () -> keyed.get(30, TimeUnit.SECONDS));
+        // The successor that failed to start is reported on close
+        assertThrows(UncheckedIOException.class, pool::close);
+    }
+
+    // Fills the heap of the child that answers, until a different child answers
+    private static boolean answeredByAnother(ForkedTaskExecutorPool pool, String pid) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!pid.equals(new String(pool.submit(new byte[4]), StandardCharsets.UTF_8))) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static ForkedTaskExecutorSpec hoardingSpec() {
+        return baseSpec(HoardTask.class)
+            .addJvmOption("-Xmx128m")
+            .heartbeatInterval(Duration.ofMillis(50))
+            .build();
+    }
+
+    private static ForkedTaskExecutorSpec executorSpec() {
+        return executorSpec(EchoTask.class);
+    }
+
+    private static ForkedTaskExecutorSpec executorSpec(Class<?> taskClass) {
+        return baseSpec(taskClass).build();
+    }
+
+    private static ForkedTaskExecutorSpec.Builder baseSpec(Class<?> taskClass) {
+        var jvmExecutable = ProcessHandle.current()
+            .info()
+            .command()
+            .orElse(null);
+        assertNotNull(jvmExecutable, "JVM executable not found");
+        return ForkedTaskExecutorSpec.builder()
+            .taskClass(taskClass.getName())
+            .javaExecutable(jvmExecutable)
+            .addJvmOption("-classpath")
+            .addJvmOption(System.getProperty("forkedtaskexecutor.test.daemonclasspath"));
+    }
+}